@@ -0,0 +1,216 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded, back pressured pipeline that takes articles from the dump reader and processes them in 3 stages:
+ * <ol>
+ *   <li>a pool of render workers each owning its own TaxonboxHandler and wiki model extracting TaxonRecords</li>
+ *   <li>a media stage submitting the images and sounds of each record to a bounded pool of concurrent commons lookups,
+ *   passing on records once all their media metadata got scraped</li>
+ *   <li>a single writer thread owning the archive writer</li>
+ * </ol>
+ * Stages are connected by bounded queues, so a slow stage blocks the stages before it and ultimately the dump reader.
+ * Records are written in the order they complete, which is not necessarily the dump order.
+ *
+ * Close the pipeline once the dump has been read to flush all remaining records.
+ */
+public class ArticlePipeline implements IArticleFilter, Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(ArticlePipeline.class);
+  private static final WikiArticle END_OF_PAGES = new WikiArticle();
+  private static final TaxonRecord END_OF_RECORDS = TaxonRecord.builder(null).build();
+  private static final long MEDIA_LINGER = 100;
+
+  private final BlockingQueue<WikiArticle> pages;
+  private final BlockingQueue<TaxonRecord> unscraped;
+  private final BlockingQueue<TaxonRecord> scraped;
+  private final List<TaxonboxHandler> handlers = Lists.newArrayList();
+  private final List<Thread> renderThreads = Lists.newArrayList();
+  private final Thread mediaThread;
+  private final Thread writerThread;
+  private final MediaEnricher enricher;
+  private final TaxonRecordWriter writer;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final AtomicLong pageCounter = new AtomicLong();
+  private boolean closed = false;
+
+  public ArticlePipeline(WikipediaConfig cfg, WikimediaScraper scraper, TaxonRecordWriter writer) {
+    this.writer = writer;
+    pages = new ArrayBlockingQueue<>(Math.max(1, cfg.pageQueueSize));
+    unscraped = new ArrayBlockingQueue<>(Math.max(1, cfg.mediaQueueSize));
+    scraped = new ArrayBlockingQueue<>(Math.max(1, cfg.writerQueueSize));
+
+    for (int idx = 0; idx < Math.max(1, cfg.workers); idx++) {
+      TaxonboxHandler handler = new TaxonboxHandler(cfg, null, null);
+      handlers.add(handler);
+      renderThreads.add(start("render-" + idx, () -> render(handler)));
+    }
+    enricher = new MediaEnricher(scraper, cfg.mediaWorkers, cfg.mediaQueueSize);
+    mediaThread = start("media", this::scrape);
+    writerThread = start("writer", this::write);
+    LOG.info("Started pipeline with {} render workers and {} concurrent media lookups", renderThreads.size(), Math.max(1, cfg.mediaWorkers));
+  }
+
+  private interface Stage {
+    void run() throws Exception;
+  }
+
+  private Thread start(String name, Stage stage) {
+    Thread t = new Thread(() -> {
+      try {
+        stage.run();
+      } catch (Throwable e) {
+        LOG.error("Pipeline stage {} failed", Thread.currentThread().getName(), e);
+        failure.compareAndSet(null, e);
+      }
+    }, name);
+    t.setDaemon(true);
+    t.start();
+    return t;
+  }
+
+  /**
+   * Blocks until the queue accepts the item, but gives up if any pipeline stage has failed.
+   */
+  private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException, IOException {
+    while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+      checkFailure();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable e = failure.get();
+    if (e != null) {
+      throw new IOException("Article pipeline failed", e);
+    }
+  }
+
+  private void render(TaxonboxHandler handler) throws Exception {
+    WikiArticle page;
+    while ((page = pages.take()) != END_OF_PAGES) {
+      try {
+        TaxonRecord rec = handler.parse(page);
+        if (rec != null) {
+          put(unscraped, rec);
+        }
+      } catch (RuntimeException e) {
+        LOG.error("Failed to process page {}", page.getTitle(), e);
+      }
+    }
+  }
+
+  private void scrape() throws Exception {
+    try {
+      TaxonRecord rec;
+      while ((rec = next()) != END_OF_RECORDS) {
+        enricher.enrich(rec).thenAccept(this::scraped);
+      }
+    } finally {
+      // all records must have been passed on before the writer gets closed
+      enricher.close();
+    }
+  }
+
+  /**
+   * Takes the next record for the media stage, sending incomplete batches of lookups while no records arrive.
+   */
+  private TaxonRecord next() throws InterruptedException {
+    TaxonRecord rec = unscraped.poll(MEDIA_LINGER, TimeUnit.MILLISECONDS);
+    if (rec == null) {
+      enricher.flush();
+      rec = unscraped.take();
+    }
+    return rec;
+  }
+
+  private void scraped(TaxonRecord rec) {
+    try {
+      put(scraped, rec);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, e);
+    } catch (IOException e) {
+      // another stage failed already
+      LOG.debug("Drop record {} of failed pipeline", rec.getId());
+    }
+  }
+
+  private void write() throws Exception {
+    TaxonRecord rec;
+    while ((rec = scraped.take()) != END_OF_RECORDS) {
+      try {
+        writer.write(rec);
+      } catch (IOException e) {
+        LOG.error("IOException writing taxon record {}", rec.getId(), e);
+      }
+    }
+  }
+
+  @Override
+  public void process(WikiArticle page, Siteinfo siteinfo) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Pipeline closed");
+    }
+    try {
+      put(pages, page);
+      if (pageCounter.incrementAndGet() % 100000 == 0) {
+        LOG.info("Read {} pages, wrote {} taxa", pageCounter.get(), writer.getCounter());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while queuing page " + page.getTitle(), e);
+    }
+  }
+
+  /**
+   * Signals the end of the dump and waits for all stages to drain their queues.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      drain(renderThreads, pages, END_OF_PAGES);
+      drain(ImmutableList.of(mediaThread), unscraped, END_OF_RECORDS);
+      drain(ImmutableList.of(writerThread), scraped, END_OF_RECORDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while closing pipeline", e);
+    }
+    checkFailure();
+    LOG.info("Pipeline closed after {} pages and {} taxa", pageCounter.get(), writer.getCounter());
+  }
+
+  private <T> void drain(List<Thread> threads, BlockingQueue<T> queue, T poison) throws InterruptedException, IOException {
+    for (int idx = 0; idx < threads.size(); idx++) {
+      put(queue, poison);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+  }
+
+  /**
+   * @return the handlers used by the render workers, e.g. to report on unknown templates
+   */
+  public List<TaxonboxHandler> getHandlers() {
+    return handlers;
+  }
+}
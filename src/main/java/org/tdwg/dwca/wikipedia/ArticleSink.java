@@ -0,0 +1,17 @@
+package org.tdwg.dwca.wikipedia;
+
+import info.bliki.wiki.dump.IArticleFilter;
+
+import java.io.Closeable;
+
+/**
+ * Receives the pages of a dump and writes the extracted taxa to an archive.
+ * All received pages are guaranteed to be written once the sink is closed.
+ */
+public interface ArticleSink extends IArticleFilter, Closeable {
+
+  /**
+   * @return number of taxa written so far
+   */
+  long getTaxonCounter();
+}
@@ -0,0 +1,79 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the latest state of all pages found in one or more adds-changes dumps.
+ * Changed pages are parsed right away and only the resulting taxon records are kept,
+ * so memory scales with the number of changed species pages.
+ *
+ * Pages that are no longer species pages, e.g. because they became a redirect or lost their taxobox,
+ * are recorded as changed without a record so their previous records get dropped.
+ * Dumps must be processed in chronological order, later versions of a page replace earlier ones.
+ */
+public class ChangeSet implements IArticleFilter {
+  private final TaxonboxHandler handler;
+  private final Set<String> pageIds = Sets.newHashSet();
+  private final Map<String, TaxonRecord> records = Maps.newLinkedHashMap();
+
+  public ChangeSet(TaxonboxHandler handler) {
+    this.handler = handler;
+  }
+
+  @Override
+  public void process(WikiArticle page, Siteinfo siteinfo) {
+    pageIds.add(page.getId());
+    TaxonRecord rec = handler.parse(page);
+    // keep the latest version at the end
+    records.remove(page.getId());
+    if (rec != null) {
+      records.put(page.getId(), rec);
+    }
+  }
+
+  /**
+   * @return a filter for pages skipped by the dump reader, e.g. redirects, which removes their records
+   */
+  public IArticleFilter removals() {
+    return (page, siteinfo) -> delete(page.getId());
+  }
+
+  /**
+   * Marks a page as deleted.
+   */
+  public void delete(String pageId) {
+    pageIds.add(pageId);
+    records.remove(pageId);
+  }
+
+  /**
+   * @param recordId a core id of the archive, i.e. the page id or a synonym id derived from it
+   * @return true if the page the record was created from was changed or deleted
+   */
+  public boolean isChanged(String recordId) {
+    int syn = recordId.indexOf("-syn");
+    return pageIds.contains(syn > 0 ? recordId.substring(0, syn) : recordId);
+  }
+
+  /**
+   * @return the records of all changed species pages in the order they were last changed
+   */
+  public Collection<TaxonRecord> getRecords() {
+    return records.values();
+  }
+
+  /**
+   * @return number of changed or deleted pages
+   */
+  public int size() {
+    return pageIds.size();
+  }
+}
@@ -17,9 +17,19 @@ package org.tdwg.dwca.wikipedia;
 
 import com.beust.jcommander.JCommander;
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
-import info.bliki.wiki.dump.WikiXMLParser;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.gbif.api.model.registry.Contact;
 import org.gbif.api.model.registry.Dataset;
@@ -27,6 +37,7 @@ import org.gbif.api.model.registry.eml.DataDescription;
 import org.gbif.api.vocabulary.ContactType;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.Language;
+import org.gbif.dwc.DwcFiles;
 import org.gbif.dwc.DwcaWriter;
 import org.gbif.dwc.terms.DwcTerm;
 import org.gbif.registry.metadata.EMLWriter;
@@ -35,34 +46,189 @@ import org.gbif.utils.HttpUtil;
 import org.gbif.utils.file.CompressionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tdwg.dwca.wikipedia.dump.MultistreamIndex;
+import org.tdwg.dwca.wikipedia.dump.MultistreamInputStream;
+import org.tdwg.dwca.wikipedia.dump.PageReader;
+import org.tdwg.dwca.wikipedia.dump.RangedDownload;
+import org.tdwg.dwca.wikipedia.dump.StreamingDownload;
+import org.tdwg.dwca.wikipedia.taxonbox.AutomaticTaxonomyScraper;
+import org.tdwg.dwca.wikipedia.taxonbox.HeavyHitters;
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
+import org.tdwg.dwca.wikipedia.taxonbox.TaxonomyIndex;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class ChecklistBuilder {
   private static final Logger LOG = LoggerFactory.getLogger(ChecklistBuilder.class);
+  private static final String DUMP_FOOTER = "</mediawiki>\n";
+  private static final int TIMEOUT = 1000 * 60 * 60 * 10;
+  private static final int CONNECTIONS = 5;
+  private static final int UNKNOWNS_CAPACITY = 5000;
+  private static final int MAX_SAMPLE_LENGTH = 500;
   private final HttpClient http;
+  private final Cache<String, Image> mediaCache;
+  private final MediaStore mediaStore;
+  // shared by all handlers of this language
+  private final HeavyHitters unknownTemplates = new HeavyHitters(UNKNOWNS_CAPACITY, MAX_SAMPLE_LENGTH);
+  private final HeavyHitters unknownProperties = new HeavyHitters(UNKNOWNS_CAPACITY, MAX_SAMPLE_LENGTH);
+  private final List<String> cutPages = Collections.synchronizedList(Lists.newArrayList());
   private DwcaWriter writer;
 
   private WikipediaConfig cfg;
   private Date modifiedDate;
   private URL url;
 
+  /**
+   * Creates a builder for a single language.
+   * Scraped taxonomy templates are only cached in memory, {@link #run(WikipediaConfig)} also keeps them in the repo
+   * and reads them from the english dump with offline taxonomies.
+   */
   public ChecklistBuilder(WikipediaConfig cfg) {
+    this(cfg, newHttpClient(cfg), WikimediaScraper.newCache());
+  }
+
+  /**
+   * Nearly all requests go to wikimedia commons, so the per host limit allows as many connections
+   * as there are concurrent media lookups.
+   */
+  private static HttpClient newHttpClient(WikipediaConfig cfg) {
+    int connections = Math.max(CONNECTIONS, cfg.mediaWorkers);
+    return HttpUtil.newMultithreadedClient(TIMEOUT, connections, connections);
+  }
+
+  /**
+   * @param http client shared with builders of other languages
+   * @param mediaCache scraped media metadata shared with builders of other languages
+   */
+  private ChecklistBuilder(WikipediaConfig cfg, HttpClient http, Cache<String, Image> mediaCache) {
     this.cfg = cfg;
-    this.http = HttpUtil.newMultithreadedClient(1000 * 60 * 60 * 10, 5, 5);
+    this.http = http;
+    this.mediaCache = mediaCache;
+    this.mediaStore = cfg.mediaCacheDays > 0 ? new MediaStore(cfg.getMediaStoreDir(), cfg.mediaCacheDays) : null;
+  }
+
+  /**
+   * Builds the archives for all configured languages.
+   * Several languages are built concurrently, splitting the configured threads, shards and workers between them.
+   * All languages share the http client and the media metadata cache, each language still writes its own archive.
+   * Automatic taxoboxes of all languages are resolved by the static taxonomy scraper,
+   * so its persistent store and the offline taxonomy index are set up once before any language starts
+   * and reported once all are done.
+   */
+  public static void run(WikipediaConfig cfg) {
+    List<Language> langs = cfg.langs.isEmpty() ? Lists.newArrayList(cfg.lang) : cfg.langs;
+    HttpClient http = newHttpClient(cfg);
+    Cache<String, Image> mediaCache = WikimediaScraper.newCache();
+    PropertiesStore taxonomyStore = cfg.taxonomyCacheDays > 0 ? new PropertiesStore(cfg.getTaxonomyStoreDir(), cfg.taxonomyCacheDays) : null;
+    AutomaticTaxonomyScraper.useStore(taxonomyStore);
+    TaxonomyIndex taxonomyIndex = null;
+    try {
+      if (cfg.offlineTaxonomy) {
+        taxonomyIndex = new ChecklistBuilder(cfg.forLanguage(Language.ENGLISH), http, mediaCache).readTaxonomyIndex();
+        AutomaticTaxonomyScraper.useIndex(taxonomyIndex);
+      }
+      if (langs.size() == 1) {
+        new ChecklistBuilder(cfg.forLanguage(langs.get(0)), http, mediaCache).run();
+      } else {
+        runConcurrently(cfg, langs, http, mediaCache);
+      }
+      reportTaxonomy(taxonomyStore, taxonomyIndex);
+    } finally {
+      AutomaticTaxonomyScraper.useStore(null);
+      AutomaticTaxonomyScraper.useIndex(null);
+    }
+  }
+
+  private static void runConcurrently(WikipediaConfig cfg, List<Language> langs, HttpClient http, Cache<String, Image> mediaCache) {
+    final int n = langs.size();
+    ExecutorService exec = Executors.newFixedThreadPool(n, new ThreadFactoryBuilder()
+        .setNameFormat("lang-%d")
+        .build());
+    try {
+      Map<Language, Future<?>> results = Maps.newLinkedHashMap();
+      for (Language lang : langs) {
+        WikipediaConfig langCfg = cfg.forLanguage(lang);
+        langCfg.threads = Math.max(1, cfg.threads / n);
+        langCfg.shards = Math.max(1, cfg.shards / n);
+        langCfg.workers = cfg.workers > 0 ? Math.max(1, cfg.workers / n) : 0;
+        langCfg.mediaWorkers = Math.max(1, cfg.mediaWorkers / n);
+        LOG.info("Building {} archive", lang.getTitleEnglish());
+        results.put(lang, exec.submit(() -> new ChecklistBuilder(langCfg, http, mediaCache).run()));
+      }
+      for (Map.Entry<Language, Future<?>> f : results.entrySet()) {
+        try {
+          f.getValue().get();
+        } catch (ExecutionException e) {
+          LOG.error("Error creating the {} wikipedia archive", f.getKey().getTitleEnglish(), e.getCause());
+        }
+      }
+      LOG.info("Built archives for {} languages with {} cached media files", n, mediaCache.size());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted while building wikipedia archives", e);
+    } finally {
+      exec.shutdownNow();
+    }
   }
 
   public void run() {
+    if (cfg.resume && cfg.checkpoint <= 0) {
+      throw new IllegalArgumentException("Resuming requires checkpoints to be enabled");
+    }
+    if (cfg.stream && cfg.checkpoint > 0) {
+      throw new IllegalArgumentException("Streaming cannot be combined with checkpoints");
+    }
+    if (cfg.offlineTaxonomy && !AutomaticTaxonomyScraper.hasIndex()) {
+      LOG.warn("Offline taxonomy templates are only read by ChecklistBuilder.run(WikipediaConfig), scrape them from wikipedia instead");
+    }
     // download file?
     try {
+      if (!cfg.changes.isEmpty()) {
+        update();
+        LOG.info("wikipedia archive updated");
+        return;
+      }
       if (cfg.offline) {
         LOG.info("Offline mode, use existing dump file {}", cfg.getDumpFile());
+      } else if (cfg.stream) {
+        try {
+          if (parseStreaming()) {
+            LOG.info("wikipedia archive created");
+            return;
+          }
+        } catch (IOException e) {
+          LOG.warn("Streaming the dump failed, fall back to downloading the entire dump first", e);
+          // the reports are written again by the fallback parse
+          unknownTemplates.clear();
+          unknownProperties.clear();
+          cutPages.clear();
+        }
+        download();
       } else {
         download();
       }
@@ -78,12 +244,65 @@ public class ChecklistBuilder {
     final File wikiDumpBz = cfg.getDumpFile();
     URL url = cfg.getWikipediaDumpUrl();
     LOG.info("Downloading latest wikipedia dump from " + url.toString());
-    boolean success = http.downloadIfChanged(url, wikiDumpBz);
+    boolean success;
+    if (cfg.chunks > 0) {
+      success = new RangedDownload(url, wikiDumpBz, cfg.chunks)
+          .checksums(cfg.getWikipediaChecksumUrl())
+          .download();
+    } else {
+      success = http.downloadIfChanged(url, wikiDumpBz);
+    }
     if (success){
       LOG.info("Downloaded new wikipedia dump");
     } else{
       LOG.info("No newer wikipedia dump, use existing copy");
     }
+    downloadIndex();
+  }
+
+  /**
+   * Downloads the index of a multistream dump, used by later offline, sharded or resumed runs.
+   */
+  private void downloadIndex() throws IOException {
+    if (cfg.multistream) {
+      URL indexUrl = cfg.getWikipediaDumpIndexUrl();
+      LOG.info("Downloading multistream index from " + indexUrl);
+      http.downloadIfChanged(indexUrl, cfg.getDumpIndexFile());
+    }
+  }
+
+  /**
+   * Downloads the dump and parses the downloaded bytes at the same time, so network and CPU time overlap.
+   * Bz2 streams are decompressed sequentially and pages are processed by a single handler or the pipeline.
+   *
+   * @return false if the local dump is up to date and no streaming took place
+   * @throws IOException if the download or parsing failed. The partial download and archive are removed
+   */
+  private boolean parseStreaming() throws IOException {
+    URL url = cfg.getWikipediaDumpUrl();
+    LOG.info("Streaming latest wikipedia dump from {}", url);
+    try (StreamingDownload download = StreamingDownload.open(url, cfg.getDumpFile())) {
+      if (download == null) {
+        LOG.info("No newer wikipedia dump, use existing copy");
+        return false;
+      }
+      modifiedDate = download.getLastModified();
+      File dwcaDir = org.gbif.utils.file.FileUtils.createTempDir("wikipedia-", "-dwca");
+      LOG.info("Writing archive files to temporary folder "+dwcaDir);
+      writer = new DwcaWriter(DwcTerm.Taxon, dwcaDir);
+      try {
+        // the decompressor must not close the download stream before it is completed
+        InputStream dump = new BZip2CompressorInputStream(new BufferedInputStream(download.getStream()), true);
+        parse(dump, writer, new File(cfg.repo, "missing_licenses-"+cfg.lang+".txt"));
+        download.complete();
+      } catch (Exception e) {
+        FileUtils.deleteDirectory(dwcaDir);
+        throw e instanceof IOException ? (IOException) e : new IOException("Failed to parse streamed dump", e);
+      }
+      finish(dwcaDir);
+    }
+    downloadIndex();
+    return true;
   }
 
   private void parse(File wikiDumpBz) throws IOException{
@@ -95,21 +314,103 @@ public class ChecklistBuilder {
 
     // parse file
     LOG.info("Parsing dump file {}", wikiDumpBz.getAbsolutePath());
-    TaxonboxHandler handler = new TaxonboxHandler(cfg, http, writer, new File(cfg.repo, "missing_licenses-"+cfg.lang+".txt"));
-    try {
-      WikiXMLParser wxp = new WikiXMLParser(wikiDumpBz, handler);
-      wxp.parse();
+    if (cfg.checkpoint > 0) {
+      if (cfg.shards > 1) {
+        LOG.warn("Shards are not supported with checkpoints. Parse dump sequentially");
+      }
+      parseWithCheckpoints(wikiDumpBz);
 
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOG.info("Unknown Taxoninfo properties: {}", handler.getWikiModel().getUnknownProperties());
-      for (Map.Entry<String, Integer> tmpl : handler.getWikiModel().getUnknownTemplatesCounter().entrySet()) {
-        LOG.debug("Unknown template >>{}<< {}x {}", tmpl.getKey(), tmpl.getValue(), handler.getWikiModel().getUnknownTemplates().get(tmpl.getKey()));
+    } else if (cfg.shards > 1 && cfg.multistream && cfg.getDumpIndexFile().exists()) {
+      parseShards(wikiDumpBz);
+
+    } else {
+      try (InputStream dump = openDump(wikiDumpBz)) {
+        parse(dump, writer, new File(cfg.repo, "missing_licenses-"+cfg.lang+".txt"));
+
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+
+    finish(dwcaDir);
+  }
+
+  /**
+   * Updates the previous archive with the pages of one or more adds-changes dumps.
+   * Only changed pages are parsed, all records of unchanged pages are copied from the previous archive.
+   */
+  private void update() throws IOException {
+    File previous = cfg.previous == null ? cfg.getDwcaFile() : cfg.previous;
+    if (!previous.exists()) {
+      throw new FileNotFoundException("Previous archive " + previous + " required for incremental updates");
+    }
+    TaxonboxHandler changesHandler = new TaxonboxHandler(cfg, null, null);
+    changesHandler.getWikiModel().setUnknowns(unknownTemplates, unknownProperties);
+    ChangeSet changes = new ChangeSet(changesHandler);
+    for (String date : cfg.changes) {
+      File changesBz = cfg.getChangesFile(date);
+      if (!cfg.offline) {
+        URL url = cfg.getChangesUrl(date);
+        LOG.info("Downloading adds-changes dump from {}", url);
+        http.downloadIfChanged(url, changesBz);
+      }
+      LOG.info("Parsing adds-changes dump {}", changesBz);
+      modifiedDate = new Date(changesBz.lastModified());
+      try (InputStream in = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(changesBz)), true)) {
+        PageReader reader = new PageReader(in, changes);
+        reader.setSkipListener(changes.removals());
+        reader.parse();
       }
     }
+    if (cfg.deleted != null) {
+      for (String id : Files.readAllLines(cfg.deleted.toPath(), StandardCharsets.UTF_8)) {
+        if (!id.trim().isEmpty()) {
+          changes.delete(id.trim());
+        }
+      }
+    }
+    LOG.info("Found {} changed pages with {} species pages", changes.size(), changes.getRecords().size());
+    collectStats(changesHandler);
 
-    // finish archive and zip it
+    File dwcaDir = org.gbif.utils.file.FileUtils.createTempDir("wikipedia-", "-dwca");
+    LOG.info("Writing archive files to temporary folder "+dwcaDir);
+    writer = new DwcaWriter(DwcTerm.Taxon, dwcaDir);
+
+    // copy unchanged records
+    File previousDir = org.gbif.utils.file.FileUtils.createTempDir("wikipedia-", "-previous");
+    DwcFiles.fromCompressed(previous.toPath(), previousDir.toPath());
+    int kept = new DwcaMerger(writer).append(previousDir, id -> !changes.isChanged(id));
+    LOG.info("Kept {} unchanged records from previous archive {}", kept, previous);
+
+    // add changed records
+    File missingLicenseFile = new File(cfg.repo, "missing_licenses-" + cfg.lang + "-changes.txt");
+    WikimediaScraper scraper = new WikimediaScraper(http, missingLicenseFile).withCache(mediaCache).withStore(mediaStore).withApi(cfg.commonsApi);
+    List<CompletableFuture<TaxonRecord>> enriched = Lists.newArrayList();
+    try (MediaEnricher enricher = new MediaEnricher(scraper, cfg.mediaWorkers, changes.getRecords().size())) {
+      for (TaxonRecord rec : changes.getRecords()) {
+        enriched.add(enricher.enrich(rec));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scraping media of changed taxa", e);
+    }
+    TaxonRecordWriter recordWriter = new TaxonRecordWriter(writer);
+    for (CompletableFuture<TaxonRecord> rec : enriched) {
+      recordWriter.write(rec.join());
+    }
+    LOG.info("Added {} changed taxa", recordWriter.getCounter());
+
+    finish(dwcaDir);
+    if (!cfg.keepTmp) {
+      FileUtils.deleteDirectory(previousDir);
+    }
+  }
+
+  /**
+   * Reports unknown templates, properties and pages over budget, adds the metadata to the archive, zips it into the final archive file and removes the temporary folder.
+   */
+  private void finish(File dwcaDir) throws IOException {
+    writeReports();
     final File dwcaFile = cfg.getDwcaFile();
     LOG.info("Bundling archive at {}", dwcaFile);
     writer.setMetadata(buildEml(), "eml.xml");
@@ -132,6 +433,289 @@ public class ChecklistBuilder {
     LOG.info("Wikipedia dwc archive completed at {} !", dwcaFile);
   }
 
+  /**
+   * Parses a multistream dump in parallel shards of contiguous bz2 streams.
+   * Every shard runs its own handler, wiki model and archive writer.
+   * The shard archives are merged in dump order into the main writer once they are completed.
+   */
+  private void parseShards(File wikiDumpBz) throws IOException {
+    List<List<MultistreamIndex.Block>> shards = MultistreamIndex.read(cfg.getDumpIndexFile()).shards(wikiDumpBz.length(), cfg.shards);
+    LOG.info("Parsing dump in {} shards", shards.size());
+    ExecutorService exec = Executors.newFixedThreadPool(shards.size(), new ThreadFactoryBuilder()
+        .setNameFormat("shard-%d")
+        .build());
+    try {
+      List<Future<File>> results = Lists.newArrayList();
+      for (int idx = 0; idx < shards.size(); idx++) {
+        final int shard = idx;
+        final boolean last = idx == shards.size() - 1;
+        results.add(exec.submit(() -> parseShard(wikiDumpBz, shard, shards.get(shard), last)));
+      }
+
+      DwcaMerger merger = new DwcaMerger(writer);
+      for (Future<File> f : results) {
+        File shardDir = f.get();
+        merger.append(shardDir);
+        if (!cfg.keepTmp) {
+          FileUtils.deleteDirectory(shardDir);
+        }
+      }
+      LOG.info("Merged {} shards with {} duplicate records", shards.size(), merger.getDuplicates());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing shards", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to parse shard", e.getCause());
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the directory of the completed shard archive
+   */
+  private File parseShard(File wikiDumpBz, int shard, List<MultistreamIndex.Block> blocks, boolean last) throws Exception {
+    File shardDir = org.gbif.utils.file.FileUtils.createTempDir("wikipedia-", "-shard" + shard);
+    LOG.info("Parsing shard {} with {} bz2 streams into {}", shard, blocks.size() - 1, shardDir);
+    DwcaWriter shardWriter = new DwcaWriter(DwcTerm.Taxon, shardDir);
+    InputStream in = new MultistreamInputStream(wikiDumpBz, blocks, Math.max(1, cfg.threads / cfg.shards));
+    if (!last) {
+      // only the last shard contains the footer stream
+      in = new SequenceInputStream(in, new ByteArrayInputStream(DUMP_FOOTER.getBytes(StandardCharsets.UTF_8)));
+    }
+    try (InputStream dump = in) {
+      parse(dump, shardWriter, new File(cfg.repo, "missing_licenses-" + cfg.lang + "-" + shard + ".txt"));
+    } finally {
+      shardWriter.close();
+    }
+    return shardDir;
+  }
+
+  /**
+   * Reads all Template:Taxonomy pages of the dump into an index, downloading the dump first unless offline.
+   * With a multistream index only the bz2 streams holding taxonomy templates are decompressed,
+   * otherwise the entire dump is read skipping all other pages at the xml level.
+   * @return the index or null if the dump is not available
+   */
+  private TaxonomyIndex readTaxonomyIndex() {
+    try {
+      if (!cfg.offline && cfg.changes.isEmpty()) {
+        download();
+      }
+      File wikiDumpBz = cfg.getDumpFile();
+      if (!wikiDumpBz.exists()) {
+        LOG.warn("No english dump {} to read taxonomy templates from, scrape them from wikipedia instead", wikiDumpBz);
+        return null;
+      }
+      return readTaxonomyIndex(wikiDumpBz);
+
+    } catch (IOException e) {
+      LOG.warn("Failed to read taxonomy templates from the english dump, scrape them from wikipedia instead", e);
+      return null;
+    }
+  }
+
+  private TaxonomyIndex readTaxonomyIndex(File wikiDumpBz) throws IOException {
+    TaxonomyIndex taxonomy = new TaxonomyIndex();
+    File index = cfg.getDumpIndexFile();
+    List<MultistreamIndex.Block> blocks = Lists.newArrayList();
+    if (cfg.multistream && index.exists()) {
+      try (InputStream idx = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(index)), true)) {
+        blocks = MultistreamIndex.blocksWithTitles(idx, wikiDumpBz.length(), TaxonomyIndex::isTaxonomyTemplate);
+      }
+    }
+    InputStream in;
+    if (!blocks.isEmpty()) {
+      in = new MultistreamInputStream(wikiDumpBz, blocks, cfg.threads);
+      if (blocks.get(blocks.size() - 1).end < wikiDumpBz.length()) {
+        in = new SequenceInputStream(in, new ByteArrayInputStream(DUMP_FOOTER.getBytes(StandardCharsets.UTF_8)));
+      }
+    } else {
+      in = openDump(wikiDumpBz);
+    }
+    try (InputStream dump = in) {
+      new PageReader(dump, taxonomy, ImmutableSet.of(TaxonomyIndex.NAMESPACE)).parse();
+    }
+    LOG.info("Read {} taxonomy templates from {}", taxonomy.size(), wikiDumpBz);
+    return taxonomy;
+  }
+
+  /**
+   * Parses the dump into archive segments, saving a checkpoint after every completed segment.
+   * If resuming, multistream dumps are only decompressed from the stream holding the last checkpointed page onwards,
+   * other dumps are read from the start skipping all pages up to the checkpoint.
+   * Once the entire dump is parsed all segments are merged into the main writer.
+   */
+  private void parseWithCheckpoints(File wikiDumpBz) throws IOException {
+    File dir = cfg.getCheckpointDir();
+    Checkpoint checkpoint = cfg.resume ? Checkpoint.load(dir, wikiDumpBz) : null;
+    if (checkpoint == null) {
+      LOG.info("Start new checkpoints in {}", dir);
+      FileUtils.deleteDirectory(dir);
+      FileUtils.forceMkdir(dir);
+      checkpoint = new Checkpoint(wikiDumpBz);
+    }
+    MultistreamIndex index = null;
+    if (cfg.multistream && cfg.getDumpIndexFile().exists()) {
+      index = MultistreamIndex.read(cfg.getDumpIndexFile());
+    }
+
+    File missingLicenseFile = new File(cfg.repo, "missing_licenses-" + cfg.lang + ".txt");
+    WikimediaScraper scraper = new WikimediaScraper(http, missingLicenseFile, checkpoint.getSegments() > 0).withCache(mediaCache).withStore(mediaStore).withApi(cfg.commonsApi);
+    Checkpointer checkpointer = new Checkpointer(dir, cfg.checkpoint, checkpoint, w -> openSink(w, scraper), index);
+    InputStream in;
+    if (index != null && checkpoint.getLastPageId() >= 0) {
+      in = new MultistreamInputStream(wikiDumpBz, index.blocksFrom(wikiDumpBz.length(), checkpoint.getLastPageId()), cfg.threads);
+    } else {
+      in = openDump(wikiDumpBz);
+    }
+    try (InputStream dump = in) {
+      new PageReader(dump, checkpointer).parse();
+    }
+    // only close if the entire dump was parsed, an incomplete segment is discarded when resuming
+    checkpointer.close();
+
+    DwcaMerger merger = new DwcaMerger(writer);
+    for (File segment : checkpointer.getSegments()) {
+      merger.append(segment);
+    }
+    LOG.info("Merged {} segments with {} taxa", checkpoint.getSegments(), checkpoint.getTaxa());
+    if (!cfg.keepTmp) {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  /**
+   * Parses an uncompressed dump stream into the given writer.
+   */
+  private void parse(InputStream dump, DwcaWriter writer, File missingLicenseFile) throws Exception {
+    try (ArticleSink sink = openSink(writer, new WikimediaScraper(http, missingLicenseFile).withCache(mediaCache).withStore(mediaStore).withApi(cfg.commonsApi))) {
+      new PageReader(dump, sink).parse();
+    }
+  }
+
+  /**
+   * Opens a sink writing taxa to the given writer,
+   * either sequentially with a single handler or with a pipeline if workers are configured.
+   */
+  private ArticleSink openSink(DwcaWriter writer, WikimediaScraper scraper) {
+    final TaxonRecordWriter recordWriter = new TaxonRecordWriter(writer);
+    if (cfg.workers > 0) {
+      final ArticlePipeline pipeline = new ArticlePipeline(cfg, scraper, recordWriter);
+      for (TaxonboxHandler handler : pipeline.getHandlers()) {
+        handler.getWikiModel().setUnknowns(unknownTemplates, unknownProperties);
+      }
+      return new ArticleSink() {
+        @Override
+        public void process(WikiArticle page, Siteinfo siteinfo) throws IOException {
+          pipeline.process(page, siteinfo);
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            pipeline.close();
+          } finally {
+            for (TaxonboxHandler handler : pipeline.getHandlers()) {
+              collectStats(handler);
+            }
+          }
+        }
+
+        @Override
+        public long getTaxonCounter() {
+          return recordWriter.getCounter();
+        }
+      };
+    }
+
+    final TaxonboxHandler handler = new TaxonboxHandler(cfg, scraper, recordWriter);
+    handler.getWikiModel().setUnknowns(unknownTemplates, unknownProperties);
+    return new ArticleSink() {
+      @Override
+      public void process(WikiArticle page, Siteinfo siteinfo) {
+        handler.process(page, siteinfo);
+      }
+
+      @Override
+      public void close() {
+        collectStats(handler);
+      }
+
+      @Override
+      public long getTaxonCounter() {
+        return recordWriter.getCounter();
+      }
+    };
+  }
+
+  private void collectStats(TaxonboxHandler handler) {
+    LOG.info("Taxobox value cache hits: {}, misses: {}", handler.getWikiModel().getValueCacheHits(), handler.getWikiModel().getValueCacheMisses());
+    cutPages.addAll(handler.getCutPages());
+  }
+
+  /**
+   * Writes the most frequent unknown templates and taxobox properties of all handlers into a tab separated report
+   * and lists all pages that exceeded their render budget.
+   */
+  private void writeReports() throws IOException {
+    File report = new File(cfg.repo, "unknowns-" + cfg.lang + ".txt");
+    FileUtils.forceMkdir(report.getParentFile());
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8)) {
+      writeUnknowns(out, "template", unknownTemplates);
+      writeUnknowns(out, "property", unknownProperties);
+    }
+    LOG.info("Found {} unknown templates and {} unknown properties, {} most frequent written to {}",
+        unknownTemplates.getTotal(), unknownProperties.getTotal(), unknownTemplates.size() + unknownProperties.size(), report);
+
+    File cut = new File(cfg.repo, "cut_pages-" + cfg.lang + ".txt");
+    synchronized (cutPages) {
+      Files.write(cut.toPath(), cutPages, StandardCharsets.UTF_8);
+    }
+    LOG.info("{} pages exceeded their render budget, listed in {}", cutPages.size(), cut);
+    if (mediaStore != null) {
+      LOG.info("Stored commons metadata hits: {}, misses: {}", mediaStore.getHits(), mediaStore.getMisses());
+    }
+  }
+
+  /**
+   * Logs the use of taxonomy templates by all languages.
+   */
+  private static void reportTaxonomy(PropertiesStore taxonomyStore, TaxonomyIndex taxonomyIndex) {
+    CacheStats taxonomy = AutomaticTaxonomyScraper.getCacheStats();
+    LOG.info("Taxonomy template cache hit rate: {}% of {} lookups, {} requested pages of which {} do not exist",
+        Math.round(taxonomy.hitRate() * 100), taxonomy.requestCount(), AutomaticTaxonomyScraper.getRequests(), AutomaticTaxonomyScraper.getMissingPages());
+    if (taxonomyStore != null) {
+      LOG.info("Stored taxonomy template hits: {}, misses: {}", taxonomyStore.getHits(), taxonomyStore.getMisses());
+    }
+    if (taxonomyIndex != null) {
+      LOG.info("Offline taxonomy template hits: {}, misses: {}", taxonomyIndex.getHits(), taxonomyIndex.getMisses());
+    }
+  }
+
+  private static void writeUnknowns(Writer out, String type, HeavyHitters unknowns) throws IOException {
+    for (HeavyHitters.Counter c : unknowns.top()) {
+      out.write(type + "\t" + c.getKey() + "\t" + c.getCount() + "\t" + c.getError() + "\t"
+          + StringUtils.normalizeSpace(Strings.nullToEmpty(c.getSample())) + "\n");
+    }
+  }
+
+  /**
+   * Opens the uncompressed dump. Multistream dumps with an existing index are decompressed in parallel,
+   * all others are read sequentially. In both cases pages are delivered in dump order.
+   */
+  private InputStream openDump(File wikiDumpBz) throws IOException {
+    File index = cfg.getDumpIndexFile();
+    if (cfg.multistream && index.exists()) {
+      return MultistreamInputStream.open(wikiDumpBz, index, cfg.threads);
+    }
+    if (cfg.multistream) {
+      LOG.warn("Multistream index {} missing, decompressing dump sequentially", index);
+    }
+    return new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(wikiDumpBz)), true);
+  }
+
   private String buildEml() throws IOException {
     Dataset dataset = new Dataset();
     dataset.setTitle(cfg.lang.getTitleEnglish() + " Wikipedia - Species Pages");
@@ -175,6 +759,6 @@ public class ChecklistBuilder {
   public static void main (String[] args) {
     WikipediaConfig cfg = new WikipediaConfig();
     new JCommander(cfg, args);
-    new ChecklistBuilder(cfg).run();
+    run(cfg);
   }
 }
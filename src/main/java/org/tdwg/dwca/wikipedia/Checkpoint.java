@@ -0,0 +1,146 @@
+package org.tdwg.dwca.wikipedia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * The persisted progress of a dump run, stored as a properties file in the checkpoint directory.
+ * A checkpoint is only written once all pages up to the last page id have been flushed to a closed archive segment.
+ */
+public class Checkpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(Checkpoint.class);
+  private static final String FILENAME = "checkpoint.properties";
+
+  private final String dump;
+  private final long dumpSize;
+  private final long dumpModified;
+  private long lastPageId = -1;
+  private long offset = -1;
+  private long pages = 0;
+  private long taxa = 0;
+  private int segments = 0;
+
+  /**
+   * A new, empty checkpoint for the given dump.
+   */
+  public Checkpoint(File dump) {
+    this(dump.getName(), dump.length(), dump.lastModified());
+  }
+
+  private Checkpoint(String dump, long dumpSize, long dumpModified) {
+    this.dump = dump;
+    this.dumpSize = dumpSize;
+    this.dumpModified = dumpModified;
+  }
+
+  /**
+   * Loads the checkpoint from a directory.
+   *
+   * @return the checkpoint or null if none exists or it was written for a different dump file
+   */
+  public static Checkpoint load(File dir, File dump) throws IOException {
+    File file = new File(dir, FILENAME);
+    if (!file.exists()) {
+      LOG.info("No checkpoint found in {}", dir);
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      props.load(in);
+    }
+    Checkpoint cp = new Checkpoint(props.getProperty("dump"),
+        Long.parseLong(props.getProperty("dumpSize")), Long.parseLong(props.getProperty("dumpModified")));
+    if (!cp.dump.equals(dump.getName()) || cp.dumpSize != dump.length() || cp.dumpModified != dump.lastModified()) {
+      LOG.warn("Checkpoint in {} was written for a different version of dump {}", dir, dump);
+      return null;
+    }
+    cp.lastPageId = Long.parseLong(props.getProperty("lastPageId"));
+    cp.offset = Long.parseLong(props.getProperty("offset"));
+    cp.pages = Long.parseLong(props.getProperty("pages"));
+    cp.taxa = Long.parseLong(props.getProperty("taxa"));
+    cp.segments = Integer.parseInt(props.getProperty("segments"));
+    return cp;
+  }
+
+  /**
+   * Atomically replaces the checkpoint file in the given directory.
+   */
+  public void save(File dir) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("dump", dump);
+    props.setProperty("dumpSize", String.valueOf(dumpSize));
+    props.setProperty("dumpModified", String.valueOf(dumpModified));
+    props.setProperty("lastPageId", String.valueOf(lastPageId));
+    props.setProperty("offset", String.valueOf(offset));
+    props.setProperty("pages", String.valueOf(pages));
+    props.setProperty("taxa", String.valueOf(taxa));
+    props.setProperty("segments", String.valueOf(segments));
+    File tmp = new File(dir, FILENAME + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      props.store(out, "wikipedia dump checkpoint");
+    }
+    Files.move(tmp.toPath(), new File(dir, FILENAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Records the completion of another archive segment.
+   */
+  void segmentCompleted(long lastPageId, long offset, long pages, long taxa) {
+    this.lastPageId = lastPageId;
+    this.offset = offset;
+    this.pages += pages;
+    this.taxa += taxa;
+    this.segments++;
+  }
+
+  /**
+   * @return id of the last page written to a completed segment or -1 if no segment was completed yet
+   */
+  public long getLastPageId() {
+    return lastPageId;
+  }
+
+  /**
+   * @return byte offset of the multistream bz2 stream holding the last written page or -1 if unknown
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return number of pages passed on to completed segments
+   */
+  public long getPages() {
+    return pages;
+  }
+
+  /**
+   * @return number of taxa written to completed segments
+   */
+  public long getTaxa() {
+    return taxa;
+  }
+
+  /**
+   * @return number of completed archive segments
+   */
+  public int getSegments() {
+    return segments;
+  }
+
+  @Override
+  public String toString() {
+    return "Checkpoint{" + dump + ", lastPageId=" + lastPageId + ", offset=" + offset + ", pages=" + pages
+        + ", taxa=" + taxa + ", segments=" + segments + '}';
+  }
+}
@@ -0,0 +1,137 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import org.apache.commons.io.FileUtils;
+import org.gbif.dwc.DwcaWriter;
+import org.gbif.dwc.terms.DwcTerm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tdwg.dwca.wikipedia.dump.MultistreamIndex;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the taxa of a dump into a series of archive segments in a checkpoint directory,
+ * persisting a checkpoint every time a segment is completed.
+ * Each segment is a complete, closed archive covering a contiguous range of pages.
+ *
+ * When resuming from a checkpoint all pages up to the last checkpointed page id are skipped,
+ * relying on page ids increasing throughout the dump as they do in wikimedia dumps.
+ * A segment left incomplete by a crash is discarded and rewritten.
+ */
+public class Checkpointer implements IArticleFilter, Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(Checkpointer.class);
+
+  public interface SinkFactory {
+    ArticleSink open(DwcaWriter writer) throws IOException;
+  }
+
+  private final File dir;
+  private final int interval;
+  private final Checkpoint checkpoint;
+  private final SinkFactory factory;
+  private final MultistreamIndex index;
+  private final long resumeAfter;
+  private DwcaWriter writer;
+  private ArticleSink sink;
+  private long lastPageId;
+  private long segmentPages;
+  private long skipped = 0;
+
+  /**
+   * @param dir        checkpoint directory holding the checkpoint file and the archive segments
+   * @param interval   number of pages per segment
+   * @param checkpoint the checkpoint to resume from or a new, empty one
+   * @param index      multistream index used to record the dump offset of the last page, can be null
+   */
+  public Checkpointer(File dir, int interval, Checkpoint checkpoint, SinkFactory factory, MultistreamIndex index) {
+    this.dir = dir;
+    this.interval = Math.max(1, interval);
+    this.checkpoint = checkpoint;
+    this.factory = factory;
+    this.index = index;
+    this.resumeAfter = checkpoint.getLastPageId();
+    if (resumeAfter >= 0) {
+      LOG.info("Resuming after page {} from {}", resumeAfter, checkpoint);
+    }
+  }
+
+  @Override
+  public void process(WikiArticle page, Siteinfo siteinfo) throws IOException {
+    long id = Long.parseLong(page.getId());
+    if (id <= resumeAfter) {
+      skipped++;
+      return;
+    }
+    if (sink == null) {
+      openSegment();
+    }
+    sink.process(page, siteinfo);
+    lastPageId = id;
+    if (++segmentPages >= interval) {
+      closeSegment();
+    }
+  }
+
+  private File segmentDir(int segment) {
+    return new File(dir, String.format("segment-%05d", segment));
+  }
+
+  private void openSegment() throws IOException {
+    File segDir = segmentDir(checkpoint.getSegments());
+    if (segDir.exists()) {
+      LOG.info("Discard incomplete segment {}", segDir);
+      FileUtils.deleteDirectory(segDir);
+    }
+    FileUtils.forceMkdir(segDir);
+    writer = new DwcaWriter(DwcTerm.Taxon, segDir);
+    sink = factory.open(writer);
+    segmentPages = 0;
+  }
+
+  private void closeSegment() throws IOException {
+    try {
+      sink.close();
+    } finally {
+      writer.close();
+    }
+    long offset = index == null ? -1 : index.offsetOf(lastPageId);
+    checkpoint.segmentCompleted(lastPageId, offset, segmentPages, sink.getTaxonCounter());
+    checkpoint.save(dir);
+    LOG.info("Saved {}", checkpoint);
+    sink = null;
+    writer = null;
+  }
+
+  /**
+   * Completes the current segment and saves the final checkpoint.
+   */
+  @Override
+  public void close() throws IOException {
+    if (sink != null) {
+      closeSegment();
+    }
+    LOG.info("Skipped {} pages already covered by the checkpoint", skipped);
+  }
+
+  /**
+   * @return the directories of all completed segments in dump order
+   */
+  public List<File> getSegments() {
+    List<File> segments = Lists.newArrayList();
+    for (int idx = 0; idx < checkpoint.getSegments(); idx++) {
+      segments.add(segmentDir(idx));
+    }
+    return segments;
+  }
+
+  public Checkpoint getCheckpoint() {
+    return checkpoint;
+  }
+}
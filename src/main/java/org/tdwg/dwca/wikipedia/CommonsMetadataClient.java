@@ -0,0 +1,188 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import org.gbif.utils.ExtendedResponse;
+import org.gbif.utils.HttpClient;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up the extended metadata of commons files via the MediaWiki api, resolving up to 50 files with a single request.
+ * Metadata values are returned as plain text keyed by their extmetadata name, e.g. Artist or LicenseShortName.
+ *
+ * @see <a href="https://www.mediawiki.org/wiki/API:Imageinfo">API:Imageinfo</a>
+ */
+public class CommonsMetadataClient {
+  private static final Logger LOG = LoggerFactory.getLogger(CommonsMetadataClient.class);
+  public static final String COMMONS_API = "https://commons.wikimedia.org/w/api.php";
+  /**
+   * Maximum number of titles the api accepts in a single query for regular clients
+   */
+  public static final int BATCH_SIZE = 50;
+  private static final String FIELDS = "Artist|Credit|DateTimeOriginal|ImageDescription|License|LicenseShortName";
+  // continuations followed for a single batch, the api rarely needs more than one
+  private static final int MAX_CONTINUE = 10;
+  private final HttpClient http;
+  private final String api;
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+   * @param api the api.php endpoint of the wiki, e.g. {@link #COMMONS_API}
+   */
+  public CommonsMetadataClient(HttpClient http, String api) {
+    this.http = http;
+    this.api = api;
+  }
+
+  /**
+   * Looks up the metadata of up to {@link #BATCH_SIZE} files with a single request.
+   *
+   * @param files file names with or without the File: prefix
+   * @return metadata by requested file name, an empty optional for files missing on commons.
+   * Files without metadata in any of the responses are not included, so they can be retried later.
+   * @throws IOException if the api request failed, the files can be retried later
+   */
+  public Map<String, Optional<Map<String, String>>> lookup(Collection<String> files) throws IOException {
+    Preconditions.checkArgument(files.size() <= BATCH_SIZE, "At most %s files can be looked up at once", BATCH_SIZE);
+    Map<String, Optional<Map<String, String>>> result = Maps.newHashMap();
+    if (files.isEmpty()) {
+      return result;
+    }
+    Map<String, String> titles = Maps.newLinkedHashMap();
+    for (String f : files) {
+      titles.put(title(f), f);
+    }
+    String url = api + "?action=query&format=xml&prop=imageinfo&iiprop=extmetadata"
+        + "&iiextmetadatafilter=" + encode(FIELDS)
+        + "&titles=" + encode(Joiner.on('|').join(titles.keySet()));
+    String continuation = "";
+    for (int round = 0; ; round++) {
+      Document doc = Jsoup.parse(get(url + continuation, files.size()), "", Parser.xmlParser());
+      parse(doc, titles).forEach(result::putIfAbsent);
+      // large metadata is split over several responses
+      Element cont = doc.select("api > continue").first();
+      if (cont == null || result.size() == titles.size()) {
+        break;
+      }
+      if (round >= MAX_CONTINUE) {
+        LOG.warn("Commons api response still incomplete after {} continuations, retry {} files later", round, titles.size() - result.size());
+        break;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (Attribute a : cont.attributes()) {
+        sb.append('&').append(a.getKey()).append('=').append(encode(a.getValue()));
+      }
+      continuation = sb.toString();
+    }
+    if (result.size() < titles.size()) {
+      LOG.debug("Commons api response misses {} of {} requested files", titles.size() - result.size(), titles.size());
+    }
+    return result;
+  }
+
+  private String get(String url, int files) throws IOException {
+    ExtendedResponse resp;
+    try {
+      resp = http.get(url);
+    } catch (URISyntaxException e) {
+      throw new IOException("Invalid commons api request for " + files + " files", e);
+    }
+    requests.incrementAndGet();
+    if (resp.getStatusCode() / 100 != 2) {
+      throw new IOException("Commons api request for " + files + " files failed. HTTP " + resp.getStatusCode());
+    }
+    return resp.getContent();
+  }
+
+  /**
+   * @return the page title for a file name, decoding url encoded names found in some wiki pages
+   */
+  private static String title(String file) {
+    String name = file;
+    if (name.indexOf('%') >= 0) {
+      try {
+        name = URLDecoder.decode(name, "UTF-8");
+      } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+        // a literal percent sign
+      }
+    }
+    return name.startsWith("File:") ? name : "File:" + name;
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Pages that are neither missing nor have any extmetadata, e.g. in a response to be continued, are left out.
+   *
+   * @param titles the requested page titles with the file name they were requested for
+   */
+  private static Map<String, Optional<Map<String, String>>> parse(Document doc, Map<String, String> titles) {
+    Map<String, Optional<Map<String, String>>> result = Maps.newHashMap();
+    // the api reports how it normalized requested titles, e.g. underscores to spaces
+    Multimap<String, String> normalized = ArrayListMultimap.create();
+    for (Element n : doc.select("normalized > n")) {
+      normalized.put(n.attr("to"), n.attr("from"));
+    }
+    for (Element page : doc.select("pages > page")) {
+      String title = page.attr("title");
+      Set<String> requested = Sets.newHashSet(normalized.get(title));
+      requested.add(title);
+      Optional<Map<String, String>> metadata = Optional.empty();
+      if (!page.hasAttr("missing") && !page.hasAttr("invalid")) {
+        Element extmetadata = page.select("imageinfo extmetadata").first();
+        if (extmetadata == null) {
+          continue;
+        }
+        Map<String, String> values = Maps.newHashMap();
+        for (Element field : extmetadata.children()) {
+          // values are html fragments, e.g. links to the artists user page
+          String value = Jsoup.parseBodyFragment(field.attr("value")).text().trim();
+          if (!value.isEmpty()) {
+            values.put(field.tagName(), value);
+          }
+        }
+        metadata = Optional.of(values);
+      }
+      for (String t : requested) {
+        if (titles.containsKey(t)) {
+          result.put(titles.get(t), metadata);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return number of api requests sent
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+}
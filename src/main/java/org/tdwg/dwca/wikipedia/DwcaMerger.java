@@ -0,0 +1,101 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.gbif.dwc.Archive;
+import org.gbif.dwc.DwcFiles;
+import org.gbif.dwc.DwcaWriter;
+import org.gbif.dwc.record.Record;
+import org.gbif.dwc.record.StarRecord;
+import org.gbif.dwc.terms.Term;
+import org.gbif.utils.file.ClosableIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Merges several unzipped archives, e.g. written by parallel shards, into a single DwcaWriter.
+ * Core records are copied together with all their extension records.
+ * Core ids must be unique across all archives, duplicates are skipped keeping the first record only.
+ * Metadata of the source archives is ignored, the target writer is expected to receive its own eml.xml.
+ */
+public class DwcaMerger {
+  private static final Logger LOG = LoggerFactory.getLogger(DwcaMerger.class);
+
+  private final DwcaWriter writer;
+  private final Set<String> ids = Sets.newHashSet();
+  private int duplicates = 0;
+
+  public DwcaMerger(DwcaWriter writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Appends all records of an archive directory to the target writer.
+   * @return number of core records copied
+   */
+  public int append(File archiveDir) throws IOException {
+    return append(archiveDir, id -> true);
+  }
+
+  /**
+   * Appends all records of an archive directory to the target writer whose core id is accepted by the filter.
+   * @return number of core records copied
+   */
+  public int append(File archiveDir, Predicate<String> filter) throws IOException {
+    LOG.info("Merging archive {}", archiveDir);
+    Archive arch = DwcFiles.fromLocation(archiveDir.toPath());
+    int counter = 0;
+    try (ClosableIterator<StarRecord> iter = arch.iterator()) {
+      while (iter.hasNext()) {
+        StarRecord star = iter.next();
+        Record core = star.core();
+        if (!filter.test(core.id())) {
+          continue;
+        }
+        if (!ids.add(core.id())) {
+          LOG.warn("Duplicate core id {} in {}. Skip record", core.id(), archiveDir);
+          duplicates++;
+          continue;
+        }
+        writer.newRecord(core.id());
+        for (Term t : core.terms()) {
+          writer.addCoreColumn(t, core.value(t));
+        }
+        for (Map.Entry<Term, List<Record>> ext : star.extensions().entrySet()) {
+          for (Record rec : ext.getValue()) {
+            writer.addExtensionRecord(ext.getKey(), row(rec));
+          }
+        }
+        counter++;
+      }
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Failed to merge archive " + archiveDir, e);
+    }
+    LOG.info("Merged {} core records from {}", counter, archiveDir);
+    return counter;
+  }
+
+  private static Map<Term, String> row(Record rec) {
+    Map<Term, String> row = Maps.newHashMap();
+    for (Term t : rec.terms()) {
+      String val = rec.value(t);
+      if (val != null) {
+        row.put(t, val);
+      }
+    }
+    return row;
+  }
+
+  public int getDuplicates() {
+    return duplicates;
+  }
+}
@@ -0,0 +1,161 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Scrapes the wikimedia commons metadata of taxon records asynchronously with a bounded number of concurrent lookups.
+ * All media of a record are looked up at the same time and the returned future completes once all of them are done,
+ * so records can be written as soon as their metadata is complete.
+ *
+ * Lookups for a file that is already being scraped are not sent again, but wait for the running lookup and copy its metadata.
+ * The number of records in flight is limited, so submitting blocks once too many records are waiting for their media.
+ *
+ * If the scraper resolves several media with one request, lookups are collected across records
+ * and sent once a batch is full or when flushed explicitly.
+ */
+public class MediaEnricher implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(MediaEnricher.class);
+  private final WikimediaScraper scraper;
+  private final ExecutorService executor;
+  private final Semaphore records;
+  private final ConcurrentMap<String, CompletableFuture<Media>> inFlight = new ConcurrentHashMap<>();
+  private final int batchSize;
+  private List<Media> batch = Lists.newArrayList();
+  private List<CompletableFuture<Media>> batchLookups = Lists.newArrayList();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong shared = new AtomicLong();
+
+  /**
+   * @param concurrency maximum number of concurrent commons requests
+   * @param maxRecords maximum number of records waiting for their media before enrich blocks
+   */
+  public MediaEnricher(WikimediaScraper scraper, int concurrency, int maxRecords) {
+    this.scraper = scraper;
+    executor = Executors.newFixedThreadPool(Math.max(1, concurrency),
+        new ThreadFactoryBuilder().setNameFormat("media-%d").setDaemon(true).build());
+    records = new Semaphore(Math.max(1, maxRecords));
+    batchSize = scraper.getBatchSize();
+  }
+
+  /**
+   * Submits lookups for all media of a record, blocking while too many records are in flight.
+   *
+   * @return a future completing with the given record once all its media got scraped, successfully or not
+   */
+  public CompletableFuture<TaxonRecord> enrich(TaxonRecord rec) throws InterruptedException {
+    if (!records.tryAcquire()) {
+      // waiting records might only wait for an incomplete batch
+      flush();
+      records.acquire();
+    }
+    List<CompletableFuture<?>> media = rec.getMedia().stream()
+        .map(this::lookup)
+        .collect(Collectors.toList());
+    return CompletableFuture.allOf(media.toArray(new CompletableFuture[media.size()]))
+        .handle((v, e) -> {
+          records.release();
+          if (e != null) {
+            LOG.warn("Failed to scrape media of taxon record {}", rec.getId(), e);
+          }
+          return rec;
+        });
+  }
+
+  private CompletableFuture<?> lookup(Media m) {
+    String key = m.getUrl();
+    CompletableFuture<Media> lookup = new CompletableFuture<>();
+    CompletableFuture<Media> running = key == null ? null : inFlight.putIfAbsent(key, lookup);
+    if (running != null) {
+      shared.incrementAndGet();
+      return running.thenAccept(source -> WikimediaScraper.copyMetadata(source, m));
+    }
+    lookups.incrementAndGet();
+    submit(m, lookup);
+    return lookup;
+  }
+
+  private synchronized void submit(Media m, CompletableFuture<Media> lookup) {
+    batch.add(m);
+    batchLookups.add(lookup);
+    if (batch.size() >= batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends all collected lookups even if they do not fill a batch, e.g. because no more records are coming for a while.
+   */
+  public synchronized void flush() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    final List<Media> media = batch;
+    final List<CompletableFuture<Media>> done = batchLookups;
+    batch = Lists.newArrayList();
+    batchLookups = Lists.newArrayList();
+    executor.execute(() -> {
+      try {
+        scraper.scrape(media);
+      } catch (RuntimeException e) {
+        LOG.warn("Cannot scrape {} media", media.size(), e);
+      } finally {
+        for (int idx = 0; idx < media.size(); idx++) {
+          // later lookups of the same file are answered by the scrapers cache
+          if (media.get(idx).getUrl() != null) {
+            inFlight.remove(media.get(idx).getUrl(), done.get(idx));
+          }
+          done.get(idx).complete(media.get(idx));
+        }
+      }
+    });
+  }
+
+  /**
+   * @return number of lookups sent to the scraper
+   */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /**
+   * @return number of lookups that waited for the same file being scraped already
+   */
+  public long getShared() {
+    return shared.get();
+  }
+
+  /**
+   * Waits for all submitted lookups and the actions depending on them to finish.
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.info("Waiting for {} media lookups to finish", inFlight.size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for media lookups", e);
+    }
+    LOG.info("Scraped {} media, {} more lookups shared a running one", lookups.get(), shared.get());
+  }
+}
@@ -0,0 +1,134 @@
+package org.tdwg.dwca.wikipedia;
+
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Persists scraped commons media metadata across runs, one small properties file per media file.
+ * Files are keyed by the sha1 of the normalised media file name and expire after the configured time to live.
+ * Media that do not exist on commons are stored as negative entries, so they are not requested again.
+ *
+ * Entries are replaced atomically, so a store can be shared by several scrapers and languages at the same time.
+ */
+public class MediaStore {
+  private static final String MISSING = "missing";
+  private static final String[] PROPERTIES = new String[]{"author", "date", "description", "license", "publisher", "source"};
+  private final PropertiesStore store;
+
+  public enum Status {
+    /**
+     * Nothing or only an expired entry is stored
+     */
+    UNKNOWN,
+    /**
+     * The media is known to be missing on commons
+     */
+    MISSING,
+    /**
+     * Metadata of the media is stored
+     */
+    FOUND
+  }
+
+  /**
+   * The stored state of a media file together with its metadata if found.
+   */
+  public static class Entry {
+    private static final Entry UNKNOWN = new Entry(Status.UNKNOWN, null);
+    private static final Entry MISSING = new Entry(Status.MISSING, null);
+    private final Status status;
+    private final Image metadata;
+
+    private Entry(Status status, Image metadata) {
+      this.status = status;
+      this.metadata = metadata;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the stored metadata or null if the status is not FOUND
+     */
+    public Image getMetadata() {
+      return metadata;
+    }
+  }
+
+  /**
+   * @param ttlDays days after which entries expire
+   */
+  public MediaStore(File dir, int ttlDays) {
+    store = new PropertiesStore(dir, ttlDays);
+  }
+
+  /**
+   * @return the file name as used by commons, with spaces instead of underscores and an upper case first character
+   */
+  static String normalize(String filename) {
+    return PropertiesStore.normalize(filename);
+  }
+
+  /**
+   * @return the stored entry, never null
+   */
+  public Entry get(String filename) {
+    Properties props = store.get(filename);
+    if (props == null) {
+      return Entry.UNKNOWN;
+    }
+    if (props.containsKey(MISSING)) {
+      return Entry.MISSING;
+    }
+    Image img = new Image();
+    img.setAuthor(props.getProperty("author"));
+    img.setDate(props.getProperty("date"));
+    img.setDescription(props.getProperty("description"));
+    img.setLicense(props.getProperty("license"));
+    img.setPublisher(props.getProperty("publisher"));
+    img.setSource(props.getProperty("source"));
+    return new Entry(Status.FOUND, img);
+  }
+
+  /**
+   * Stores the metadata of a media file, replacing any existing entry.
+   */
+  public void put(String filename, Media metadata) {
+    Properties props = new Properties();
+    String[] values = new String[]{metadata.getAuthor(), metadata.getDate(), metadata.getDescription(),
+        metadata.getLicense(), metadata.getPublisher(), metadata.getSource()};
+    for (int i = 0; i < PROPERTIES.length; i++) {
+      if (values[i] != null) {
+        props.setProperty(PROPERTIES[i], values[i]);
+      }
+    }
+    store.put(filename, props);
+  }
+
+  /**
+   * Stores a negative entry for a media file that does not exist.
+   */
+  public void putMissing(String filename) {
+    Properties props = new Properties();
+    props.setProperty(MISSING, "true");
+    store.put(filename, props);
+  }
+
+  /**
+   * @return number of lookups answered by the store, including negative entries
+   */
+  public long getHits() {
+    return store.getHits();
+  }
+
+  /**
+   * @return number of lookups not found in the store or expired
+   */
+  public long getMisses() {
+    return store.getMisses();
+  }
+}
@@ -0,0 +1,124 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists small sets of properties across runs, one properties file per wiki page title.
+ * Files are keyed by the sha1 of the normalised title and expire after the configured time to live.
+ *
+ * Entries are replaced atomically, so a store can be shared by several threads and languages at the same time.
+ */
+public class PropertiesStore {
+  private static final Logger LOG = LoggerFactory.getLogger(PropertiesStore.class);
+  private final File dir;
+  private final long ttl;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param ttlDays days after which entries expire
+   */
+  public PropertiesStore(File dir, int ttlDays) {
+    this.dir = dir;
+    this.ttl = TimeUnit.DAYS.toMillis(ttlDays);
+  }
+
+  /**
+   * @return the title as used by MediaWiki, with spaces instead of underscores and an upper case first character
+   */
+  public static String normalize(String title) {
+    StringBuilder sb = new StringBuilder(title.length());
+    boolean space = false;
+    for (int i = 0; i < title.length(); i++) {
+      char c = title.charAt(i);
+      if (c == ' ' || c == '_') {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(sb.length() == 0 ? Character.toUpperCase(c) : c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private File file(String title) {
+    String hash = Hashing.sha1().hashString(normalize(title), StandardCharsets.UTF_8).toString();
+    return new File(dir, hash.substring(0, 2) + File.separator + hash + ".properties");
+  }
+
+  /**
+   * @return the stored properties or null if nothing or only an expired entry is stored
+   */
+  public Properties get(String title) {
+    File f = file(title);
+    if (!f.exists() || System.currentTimeMillis() - f.lastModified() > ttl) {
+      misses.incrementAndGet();
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(f)) {
+      props.load(in);
+    } catch (IOException e) {
+      LOG.warn("Cannot read stored properties for {}", title, e);
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return props;
+  }
+
+  /**
+   * Stores the properties of a page, replacing any existing entry.
+   */
+  public void put(String title, Properties props) {
+    File f = file(title);
+    try {
+      File parent = f.getParentFile();
+      parent.mkdirs();
+      File tmp = File.createTempFile(f.getName(), ".tmp", parent);
+      try (OutputStream out = new FileOutputStream(tmp)) {
+        props.store(out, normalize(title));
+      }
+      try {
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot store properties for {}", title, e);
+    }
+  }
+
+  /**
+   * @return number of lookups answered by the store
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups not found in the store or expired
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+}
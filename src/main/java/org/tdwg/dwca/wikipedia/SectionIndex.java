@@ -0,0 +1,86 @@
+package org.tdwg.dwca.wikipedia;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * The offsets of all level 2 section headings like ==Description== in a wiki text.
+ * Section titles and bodies are read from the original text, bodies as views without copying.
+ * The first section is the abstract before the first heading and has no title.
+ *
+ * A heading is matched like the regular expression (?&lt;!=)==([^=]+)== anywhere in the text.
+ */
+class SectionIndex {
+  private final CharSequence text;
+  // per heading the start and end of its title, the heading itself starts 2 chars before and ends 2 chars after
+  private int[] titles = new int[32];
+  private int headings;
+
+  SectionIndex(CharSequence text) {
+    this.text = text;
+    final int len = text.length();
+    int i = 0;
+    while (i + 1 < len) {
+      if (text.charAt(i) == '=' && text.charAt(i + 1) == '=' && (i == 0 || text.charAt(i - 1) != '=')) {
+        int k = i + 2;
+        while (k < len && text.charAt(k) != '=') {
+          k++;
+        }
+        if (k == len) {
+          // no closing equal signs anymore
+          break;
+        }
+        if (k > i + 2 && k + 1 < len && text.charAt(k + 1) == '=') {
+          add(i + 2, k);
+          i = k + 2;
+          continue;
+        }
+        // there is no heading starting before k
+        i = k + 1;
+        continue;
+      }
+      i++;
+    }
+  }
+
+  private void add(int start, int end) {
+    if (headings * 2 == titles.length) {
+      titles = Arrays.copyOf(titles, titles.length * 2);
+    }
+    titles[headings * 2] = start;
+    titles[headings * 2 + 1] = end;
+    headings++;
+  }
+
+  /**
+   * @return number of sections including the abstract
+   */
+  int size() {
+    return headings + 1;
+  }
+
+  /**
+   * @return the raw title of a section or null for the abstract
+   */
+  String title(int section) {
+    if (section == 0) {
+      return null;
+    }
+    return text.subSequence(titles[section * 2 - 2], titles[section * 2 - 1]).toString();
+  }
+
+  int bodyStart(int section) {
+    return section == 0 ? 0 : titles[section * 2 - 1] + 2;
+  }
+
+  int bodyEnd(int section) {
+    return section == headings ? text.length() : titles[section * 2] - 2;
+  }
+
+  /**
+   * @return a read only view of the section body
+   */
+  CharSequence body(int section) {
+    return CharBuffer.wrap(text, bodyStart(section), bodyEnd(section));
+  }
+}
@@ -0,0 +1,106 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import org.gbif.dwc.terms.Term;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All archive rows extracted from a single species page, ready to be written by a TaxonRecordWriter.
+ * The record itself is immutable and can safely be handed over between threads.
+ * Only the metadata of the attached media objects is filled in later by scraping wikimedia commons,
+ * the multimedia rows are therefore created when the record is written.
+ */
+public class TaxonRecord {
+  private final String id;
+  private final Map<Term, String> core;
+  private final ListMultimap<Term, Map<Term, String>> extensions;
+  private final List<Media> media;
+  private final List<TaxonRecord> synonyms;
+
+  private TaxonRecord(Builder b) {
+    this.id = b.id;
+    this.core = Collections.unmodifiableMap(b.core);
+    this.extensions = b.extensions.build();
+    this.media = b.media.build();
+    this.synonyms = b.synonyms.build();
+  }
+
+  public static Builder builder(String id) {
+    return new Builder(id);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return the core columns in insertion order. Values can be null
+   */
+  public Map<Term, String> getCore() {
+    return core;
+  }
+
+  /**
+   * @return extension rows keyed on their row type. Row values can be null
+   */
+  public ListMultimap<Term, Map<Term, String>> getExtensions() {
+    return extensions;
+  }
+
+  /**
+   * @return images and sounds with a non blank url
+   */
+  public List<Media> getMedia() {
+    return media;
+  }
+
+  /**
+   * @return additional core records for the synonyms of this taxon, without any extension rows
+   */
+  public List<TaxonRecord> getSynonyms() {
+    return synonyms;
+  }
+
+  public static class Builder {
+    private final String id;
+    private final Map<Term, String> core = Maps.newLinkedHashMap();
+    private final ImmutableListMultimap.Builder<Term, Map<Term, String>> extensions = ImmutableListMultimap.builder();
+    private final ImmutableList.Builder<Media> media = ImmutableList.builder();
+    private final ImmutableList.Builder<TaxonRecord> synonyms = ImmutableList.builder();
+
+    private Builder(String id) {
+      this.id = id;
+    }
+
+    public Builder core(Term term, String value) {
+      core.put(term, value);
+      return this;
+    }
+
+    public Builder extension(Term rowType, Map<Term, String> row) {
+      extensions.put(rowType, Collections.unmodifiableMap(Maps.newHashMap(row)));
+      return this;
+    }
+
+    public Builder media(Media m) {
+      media.add(m);
+      return this;
+    }
+
+    public Builder synonym(TaxonRecord synonym) {
+      synonyms.add(synonym);
+      return this;
+    }
+
+    public TaxonRecord build() {
+      return new TaxonRecord(this);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Maps;
+import org.gbif.dwc.DwcaWriter;
+import org.gbif.dwc.terms.DcTerm;
+import org.gbif.dwc.terms.GbifTerm;
+import org.gbif.dwc.terms.Term;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+import org.tdwg.dwca.wikipedia.taxonbox.Sound;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes taxon records to a DwcaWriter.
+ * The underlying writer is not thread safe, so a single instance should be used by one thread only.
+ */
+public class TaxonRecordWriter {
+  private final DwcaWriter writer;
+  private long counter = 0;
+
+  public TaxonRecordWriter(DwcaWriter writer) {
+    this.writer = writer;
+  }
+
+  public void write(TaxonRecord rec) throws IOException {
+    writeCore(rec);
+    for (Map.Entry<Term, Map<Term, String>> ext : rec.getExtensions().entries()) {
+      writer.addExtensionRecord(ext.getKey(), ext.getValue());
+    }
+    for (Media m : rec.getMedia()) {
+      writer.addExtensionRecord(GbifTerm.Multimedia, mediaRow(m));
+    }
+    for (TaxonRecord syn : rec.getSynonyms()) {
+      writeCore(syn);
+    }
+    counter++;
+  }
+
+  private void writeCore(TaxonRecord rec) throws IOException {
+    writer.newRecord(rec.getId());
+    for (Map.Entry<Term, String> col : rec.getCore().entrySet()) {
+      writer.addCoreColumn(col.getKey(), col.getValue());
+    }
+  }
+
+  private static Map<Term, String> mediaRow(Media m) {
+    Map<Term, String> row = Maps.newHashMap();
+    row.put(DcTerm.type, m instanceof Sound ? "Sound" : "StillImage");
+    row.put(DcTerm.identifier, WikipediaUtils.getImageLink(m.getUrl()));
+    row.put(DcTerm.references, WikipediaUtils.getImageWikiLink(m.getUrl()));
+    row.put(DcTerm.title, m.getTitle());
+    row.put(DcTerm.creator, m.getAuthor());
+    row.put(DcTerm.created, m.getDate());
+    row.put(DcTerm.license, m.getLicense());
+    row.put(DcTerm.publisher, m.getPublisher());
+    row.put(DcTerm.source, m.getSource());
+    row.put(DcTerm.description, m.getDescription());
+    return row;
+  }
+
+  /**
+   * @return number of taxon records written so far, not counting synonyms
+   */
+  public long getCounter() {
+    return counter;
+  }
+}
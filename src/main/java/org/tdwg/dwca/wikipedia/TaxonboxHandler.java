@@ -3,6 +3,7 @@ package org.tdwg.dwca.wikipedia;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import info.bliki.wiki.dump.IArticleFilter;
 import info.bliki.wiki.dump.Siteinfo;
@@ -21,6 +22,7 @@ import org.tdwg.dwca.wikipedia.taxonbox.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -31,8 +33,7 @@ public class TaxonboxHandler implements IArticleFilter {
   private final static Logger LOG = LoggerFactory.getLogger(TaxonboxHandler.class);
   private final WikipediaConfig cfg;
   private final Language lang;
-  private final HttpClient http;
-  private final DwcaWriter writer;
+  private final TaxonRecordWriter writer;
   private Integer taxonCount = 0;
   private final WikimediaScraper imgScraper;
   private static final String TEXT_LICENSE = "CC-BY-SA 3.0";
@@ -44,9 +45,12 @@ public class TaxonboxHandler implements IArticleFilter {
   private final Term taxobox;
   private final TaxonboxWikiModel wikiModel;
   private final ITextConverter converter = new PlainTextConverter();
+  // pages over their render budget as title and reason
+  private final List<String> cutPages = Lists.newArrayList();
+  private int pageTextSize;
 
-  private final Pattern SPLIT_SECTIONS = Pattern.compile("(?<!=)==([^=]+)==");
   private final Pattern REMOVE_TEMPLATES = Pattern.compile("\\{\\{[a-zA-Z0-9-_ ]*\\}\\}");
+  private final Pattern PARAGRAPHS = Pattern.compile("\n *\n");
   private final Set<String> IGNORE_SETIONS = ImmutableSet.<String>builder()
     .addAll(TaxonInfoEN.IGNORE_SETIONS)
     .addAll(TaxonInfoDE.IGNORE_SETIONS)
@@ -58,14 +62,21 @@ public class TaxonboxHandler implements IArticleFilter {
   private final Pattern REDIRECT = Pattern.compile("^.REDIRECT", Pattern.CASE_INSENSITIVE);
 
   public TaxonboxHandler(WikipediaConfig cfg, HttpClient http, DwcaWriter writer, File missingLicenseFile) throws IOException {
+    this(cfg, new WikimediaScraper(http, missingLicenseFile), writer == null ? null : new TaxonRecordWriter(writer));
+  }
+
+  /**
+   * @param imgScraper scraper for media metadata, only needed if pages are processed via the IArticleFilter interface
+   * @param writer archive writer, only needed if pages are processed via the IArticleFilter interface
+   */
+  public TaxonboxHandler(WikipediaConfig cfg, WikimediaScraper imgScraper, TaxonRecordWriter writer) {
     this.writer = writer;
-    this.http = http;
     this.cfg = cfg;
     this.lang = cfg.lang;
     if (lang == null) {
       throw new IllegalArgumentException("Language {} not understood. Please use iso 2 or 3 character codes");
     }
-    imgScraper = new WikimediaScraper(http, missingLicenseFile);
+    this.imgScraper = imgScraper;
     wikiModel = new TaxonboxWikiModel(cfg);
     termFactory = TermFactory.instance();
     termFossil = termFactory.findTerm("http://wikipedia.org/taxon/fossilRange");
@@ -75,78 +86,167 @@ public class TaxonboxHandler implements IArticleFilter {
 
   @Override
   public void process(WikiArticle page, Siteinfo siteinfo) {
+    TaxonRecord rec = parse(page);
+    if (rec != null) {
+      scrapeMedia(rec);
+      try {
+        writer.write(rec);
+      } catch (IOException e) {
+        LOG.error("IOException writing taxon page {}", page.getTitle());
+      }
+    }
+  }
+
+  /**
+   * Extracts all archive rows from a species page.
+   * Media metadata is not yet scraped and the record is not written.
+   *
+   * @return the extracted record or null if the page is not a species page
+   */
+  public TaxonRecord parse(WikiArticle page) {
     wikiModel.reset();
     // ignore categories, templates, etc. Only process main articles
-    if (page.isMain() && page.getText() != null && !REDIRECT.matcher(page.getText()).find()) {
+    // and only render pages that contain a taxobox at all
+    if (page.isMain() && page.getText() != null && !REDIRECT.matcher(page.getText()).find()
+        && TaxoboxPrefilter.matches(page.getText())) {
       LinkedHashMap<String, String> sections = splitPage(page);
 
+      String exceeded = wikiModel.getBudgetExceeded();
+      if (exceeded != null) {
+        // keep the taxon if its taxobox was extracted in time, but without the remaining sections
+        LOG.warn("Page {} exceeded its render budget with {}. {}", page.getTitle(), exceeded,
+            wikiModel.isSpeciesPage() ? "Sections cut short" : "Page skipped");
+        cutPages.add(page.getTitle() + "\t" + exceeded);
+      }
       if (wikiModel.isSpeciesPage()) {
-        try {
-          processTaxonPage(page, wikiModel.getTaxonInfo(), sections);
-        } catch (IOException e) {
-          LOG.error("IOException writing taxon page {}", page.getTitle());
-        }
+        return buildRecord(page, wikiModel.getTaxonInfo(), sections);
       }
     }
+    return null;
+  }
+
+  /**
+   * Scrapes the wikimedia commons metadata for all media of a record.
+   */
+  public void scrapeMedia(TaxonRecord rec) {
+    imgScraper.scrape(rec.getMedia());
   }
 
   @VisibleForTesting
   protected LinkedHashMap<String, String> splitPage(WikiArticle page) {
+    if (cfg.singleParse) {
+      return renderArticle(page);
+    }
     LinkedHashMap<String, String> sections = Maps.newLinkedHashMap();
-    Matcher m = SPLIT_SECTIONS.matcher(page.getText());
-    String title = "Abstract";
-    int lastIndex = 0;
-    while (m.find()) {
-      String body = page.getText().substring(lastIndex, m.start());
-      addSection(sections, title, body);
-      // if we havent found a taxonbox in the first section break out
-      if (!wikiModel.isSpeciesPage()) {
+    SectionIndex index = new SectionIndex(page.getText());
+    pageTextSize = 0;
+    for (int idx = 0; idx < index.size(); idx++) {
+      addSection(sections, page.getText(), index, idx);
+      // if we havent found a taxonbox in the first section or the page is over budget break out
+      if (!wikiModel.isSpeciesPage() || wikiModel.getBudgetExceeded() != null) {
         return sections;
       }
-      // title of the next section
-      title = m.group(1);
-      lastIndex = m.end();
     }
-    String body = page.getText().substring(lastIndex);
-    addSection(sections, title, body);
+    return sections;
+  }
 
+  /**
+   * Renders the entire page at once, the taxobox and interlanguage links are extracted while rendering.
+   */
+  private LinkedHashMap<String, String> renderArticle(WikiArticle page) {
+    LinkedHashMap<String, String> sections = Maps.newLinkedHashMap();
+    pageTextSize = 0;
+    try {
+      List<Map.Entry<String, String>> rendered = wikiModel.renderArticle(converter, page.getText());
+      if (!wikiModel.isSpeciesPage() || wikiModel.checkBudget() != null) {
+        // not a species page or sections might have been rendered only partially
+        return sections;
+      }
+      for (Map.Entry<String, String> section : rendered) {
+        String titleNormed = section.getKey() == null ? "Abstract" : renderTitle(section.getKey());
+        if (!Strings.isNullOrEmpty(titleNormed) && !isIgnored(titleNormed) && !addSection(sections, titleNormed, section.getValue())) {
+          break;
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Failed to parse page {}", page.getTitle(), e);
+    }
     return sections;
   }
 
-  private void extractVernacularNames(String body) {
+  private void extractVernacularNames(String text, int start, int end) {
     if (wikiModel.isSpeciesPage()) {
-      Matcher m = EXTRACT_VERNACULARS.matcher(body);
+      Matcher m = EXTRACT_VERNACULARS.matcher(text).region(start, end);
       while (m.find()) {
         wikiModel.getTaxonInfo().getVernacularNames().put(m.group(1), m.group(2).trim());
       }
     }
   }
 
-  private void addSection(Map<String, String> sections, String title, String body) {
+  /**
+   * @return the plain section title, avoiding bliki for titles without markup
+   */
+  private String renderTitle(String title) throws IOException {
+    String plain = PlainWikiText.toPlainText(title);
+    if (plain == null) {
+      plain = wikiModel.render(converter, title);
+    }
+    return plain.trim();
+  }
+
+  private boolean isIgnored(String title) {
+    String lower = title.toLowerCase();
+    return IGNORE_SETIONS.contains(lower) || lower.startsWith("additional ");
+  }
+
+  private void addSection(Map<String, String> sections, String text, SectionIndex index, int idx) {
+    String title = idx == 0 ? "Abstract" : index.title(idx);
     try {
-      String titleNormed = wikiModel.render(new PlainTextConverter(), title).trim();
-      if (!Strings.isNullOrEmpty(titleNormed) && !IGNORE_SETIONS.contains(titleNormed.toLowerCase()) && !titleNormed.toLowerCase().startsWith("additional ")) {
-        String plain = wikiModel.render(converter, body);
-        // replace remaining {{xyz}}
-        plain = REMOVE_TEMPLATES.matcher(plain).replaceAll(" ").trim();
-        // remove [1], [2] etc
-        //plain = REMOVE_FOOTNOTES.matcher(plain).replaceAll(" ");
-        // replace newlines with <br/>
-        plain = plain.replaceAll("\n *\n", "<br/><br/>");
-
-        if (!Strings.isNullOrEmpty(plain)) {
-          sections.put(titleNormed, plain);
+      // ignored sections are rejected by their title before the body is copied or rendered
+      String titleNormed = renderTitle(title);
+      if (!Strings.isNullOrEmpty(titleNormed) && !isIgnored(titleNormed)) {
+        String plain = wikiModel.render(converter, index.body(idx).toString());
+        if (wikiModel.checkBudget() != null) {
+          // drop the section rendered only partially
+          return;
+        }
+        if (!addSection(sections, titleNormed, plain)) {
+          return;
         }
       }
       // discover vernacular name links
-      extractVernacularNames(body);
+      extractVernacularNames(text, index.bodyStart(idx), index.bodyEnd(idx));
 
     } catch (Exception e) {
       LOG.error("Failed to parse section {}", title, e);
     }
   }
 
-  private void processTaxonPage(WikiArticle page, TaxonInfo taxon, LinkedHashMap<String, String> sections) throws IOException {
+  /**
+   * Cleans and adds the plain text of a section if it still fits into the page budget.
+   *
+   * @return false if the page text budget is exceeded
+   */
+  private boolean addSection(Map<String, String> sections, String title, String plain) {
+    pageTextSize += plain.length();
+    if (cfg.maxPageText > 0 && pageTextSize > cfg.maxPageText) {
+      wikiModel.exceedBudget("page text over " + cfg.maxPageText + " characters");
+      return false;
+    }
+    // replace remaining {{xyz}}
+    plain = REMOVE_TEMPLATES.matcher(plain).replaceAll(" ").trim();
+    // remove [1], [2] etc
+    //plain = REMOVE_FOOTNOTES.matcher(plain).replaceAll(" ");
+    // replace newlines with <br/>
+    plain = PARAGRAPHS.matcher(plain).replaceAll("<br/><br/>");
+
+    if (!Strings.isNullOrEmpty(plain)) {
+      sections.put(title, plain);
+    }
+    return true;
+  }
+
+  private TaxonRecord buildRecord(WikiArticle page, TaxonInfo taxon, LinkedHashMap<String, String> sections) {
 
     taxon.postprocess(page, lang);
 
@@ -161,29 +261,29 @@ public class TaxonboxHandler implements IArticleFilter {
     taxonCount++;
     LOG.debug("Processing #" + taxonCount + " {}: {}", WikipediaUtils.getWikiLink(lang, page.getTitle()),
       taxon.getScientificName());
-    // write core record
-    writer.newRecord(page.getId());
-    writer.addCoreColumn(DcTerm.references, WikipediaUtils.getWikiLink(lang, page.getTitle()));
-    writer.addCoreColumn(DcTerm.modified, page.getTimeStamp());
-    writer.addCoreColumn(DwcTerm.scientificName, taxon.getScientificName());
-    writer.addCoreColumn(DwcTerm.scientificNameAuthorship, taxon.getScientificNameAuthorship());
+    // core record
+    TaxonRecord.Builder rec = TaxonRecord.builder(page.getId());
+    rec.core(DcTerm.references, WikipediaUtils.getWikiLink(lang, page.getTitle()));
+    rec.core(DcTerm.modified, page.getTimeStamp());
+    rec.core(DwcTerm.scientificName, taxon.getScientificName());
+    rec.core(DwcTerm.scientificNameAuthorship, taxon.getScientificNameAuthorship());
     if (taxon.getRank() != null) {
-      writer.addCoreColumn(DwcTerm.taxonRank, taxon.getRank().name());
+      rec.core(DwcTerm.taxonRank, taxon.getRank().name());
     }
-    writer.addCoreColumn(DwcTerm.verbatimTaxonRank, taxon.getRankVerbatim());
-    writer.addCoreColumn(DwcTerm.kingdom, taxon.getKingdom());
-    writer.addCoreColumn(DwcTerm.phylum, taxon.getPhylum());
-    writer.addCoreColumn(DwcTerm.class_, taxon.getClazz());
-    writer.addCoreColumn(DwcTerm.order, taxon.getOrder());
-    writer.addCoreColumn(DwcTerm.family, taxon.getFamily());
-    writer.addCoreColumn(DwcTerm.genus, taxon.getGenus());
-    writer.addCoreColumn(DwcTerm.subgenus, taxon.getSubgenus());
-    writer.addCoreColumn(DwcTerm.taxonRemarks, taxon.getRemarks());
+    rec.core(DwcTerm.verbatimTaxonRank, taxon.getRankVerbatim());
+    rec.core(DwcTerm.kingdom, taxon.getKingdom());
+    rec.core(DwcTerm.phylum, taxon.getPhylum());
+    rec.core(DwcTerm.class_, taxon.getClazz());
+    rec.core(DwcTerm.order, taxon.getOrder());
+    rec.core(DwcTerm.family, taxon.getFamily());
+    rec.core(DwcTerm.genus, taxon.getGenus());
+    rec.core(DwcTerm.subgenus, taxon.getSubgenus());
+    rec.core(DwcTerm.taxonRemarks, taxon.getRemarks());
 
     // other non core
-    writer.addCoreColumn(termTrend, taxon.getTrend());
-    writer.addCoreColumn(termFossil, taxon.getFossilRange());
-    writer.addCoreColumn(taxobox, taxon.getRawParams().toString());
+    rec.core(termTrend, taxon.getTrend());
+    rec.core(termFossil, taxon.getFossilRange());
+    rec.core(taxobox, taxon.getRawParams().toString());
 
     Map<Term, String> row;
 
@@ -196,7 +296,7 @@ public class TaxonboxHandler implements IArticleFilter {
       row.put(DwcTerm.vernacularName, vname);
       row.put(DcTerm.language, lang.getIso2LetterCode());
       row.put(GbifTerm.isPreferredName, "true");
-      writer.addExtensionRecord(GbifTerm.VernacularName, row);
+      rec.extension(GbifTerm.VernacularName, row);
     }
 
     // other languages
@@ -207,7 +307,7 @@ public class TaxonboxHandler implements IArticleFilter {
       row = Maps.newHashMap();
       row.put(DwcTerm.vernacularName, vn.getValue());
       row.put(DcTerm.language, vn.getKey());
-      writer.addExtensionRecord(GbifTerm.VernacularName, row);
+      rec.extension(GbifTerm.VernacularName, row);
     }
 
     // species profile extension
@@ -220,7 +320,7 @@ public class TaxonboxHandler implements IArticleFilter {
       } else {
         row.put(GbifTerm.isExtinct, String.valueOf(taxon.getExtinctSymbol()));
       }
-      writer.addExtensionRecord(GbifTerm.SpeciesProfile, row);
+      rec.extension(GbifTerm.SpeciesProfile, row);
     }
 
     // distribution extension
@@ -236,41 +336,17 @@ public class TaxonboxHandler implements IArticleFilter {
     }
      */
 
-    // image extension
+    // image extension, rows are created once the metadata got scraped
     for (Image image : taxon.getImages()) {
       if (!StringUtils.isBlank(image.getUrl())) {
-        imgScraper.scrape(image);
-        row = Maps.newHashMap();
-        row.put(DcTerm.type, "StillImage");
-        row.put(DcTerm.identifier, WikipediaUtils.getImageLink(image.getUrl()));
-        row.put(DcTerm.references, WikipediaUtils.getImageWikiLink(image.getUrl()));
-        row.put(DcTerm.title, image.getTitle());
-        row.put(DcTerm.creator, image.getAuthor());
-        row.put(DcTerm.created, image.getDate());
-        row.put(DcTerm.license, image.getLicense());
-        row.put(DcTerm.publisher, image.getPublisher());
-        row.put(DcTerm.source, image.getSource());
-        row.put(DcTerm.description, image.getDescription());
-        writer.addExtensionRecord(GbifTerm.Multimedia, row);
+        rec.media(image);
       }
     }
 
     // sounds
     for (Sound sound : taxon.getSounds()) {
       if (!StringUtils.isBlank(sound.getUrl())) {
-        imgScraper.scrape(sound);
-        row = Maps.newHashMap();
-        row.put(DcTerm.type, "Sound");
-        row.put(DcTerm.identifier, WikipediaUtils.getImageLink(sound.getUrl()));
-        row.put(DcTerm.references, WikipediaUtils.getImageWikiLink(sound.getUrl()));
-        row.put(DcTerm.title, sound.getTitle());
-        row.put(DcTerm.creator, sound.getAuthor());
-        row.put(DcTerm.created, sound.getDate());
-        row.put(DcTerm.license, sound.getLicense());
-        row.put(DcTerm.publisher, sound.getPublisher());
-        row.put(DcTerm.source, sound.getSource());
-        row.put(DcTerm.description, sound.getDescription());
-        writer.addExtensionRecord(GbifTerm.Multimedia, row);
+        rec.media(sound);
       }
     }
 
@@ -282,7 +358,7 @@ public class TaxonboxHandler implements IArticleFilter {
       row.put(DcTerm.language, lang.getIso2LetterCode());
       row.put(DcTerm.license, TEXT_LICENSE);
       row.put(DcTerm.references, WikipediaUtils.getWikiLink(lang, page.getTitle(), section.getKey()));
-      writer.addExtensionRecord(GbifTerm.Description, row);
+      rec.extension(GbifTerm.Description, row);
     }
 
 
@@ -291,13 +367,13 @@ public class TaxonboxHandler implements IArticleFilter {
       row = Maps.newHashMap();
       row.put(DwcTerm.typeStatus, "type species");
       row.put(DwcTerm.scientificName, concatSciName(taxon.getTypeSpecies(), taxon.getTypeSpeciesAuthority()));
-      writer.addExtensionRecord(GbifTerm.TypesAndSpecimen, row);
+      rec.extension(GbifTerm.TypesAndSpecimen, row);
 
     } else if (!Strings.isNullOrEmpty(taxon.getTypeGenus())) {
       row = Maps.newHashMap();
       row.put(DwcTerm.typeStatus, "type genus");
       row.put(DwcTerm.scientificName, concatSciName(taxon.getTypeGenus(), taxon.getTypeGenusAuthority()));
-      writer.addExtensionRecord(GbifTerm.TypesAndSpecimen, row);
+      rec.extension(GbifTerm.TypesAndSpecimen, row);
     }
 
 
@@ -305,14 +381,15 @@ public class TaxonboxHandler implements IArticleFilter {
     int synIdx = 1;
     for (String synonym : taxon.getSynonyms()) {
       String synID = page.getId() + "-syn" + synIdx;
-      writer.newRecord(synID);
-
-      writer.addCoreColumn(DwcTerm.scientificName, synonym);
-      writer.addCoreColumn(DwcTerm.acceptedNameUsage, taxon.getScientificName());
-      writer.addCoreColumn(DwcTerm.acceptedNameUsageID, page.getId());
-      writer.addCoreColumn(DwcTerm.taxonomicStatus, "synonym");
+      rec.synonym(TaxonRecord.builder(synID)
+          .core(DwcTerm.scientificName, synonym)
+          .core(DwcTerm.acceptedNameUsage, taxon.getScientificName())
+          .core(DwcTerm.acceptedNameUsageID, page.getId())
+          .core(DwcTerm.taxonomicStatus, "synonym")
+          .build());
       synIdx++;
     }
+    return rec.build();
   }
 
   private String concatSciName(String name, String authority) {
@@ -323,6 +400,13 @@ public class TaxonboxHandler implements IArticleFilter {
     return name;
   }
 
+  /**
+   * @return title and reason of all pages that exceeded their render budget, separated by a tab
+   */
+  public List<String> getCutPages() {
+    return cutPages;
+  }
+
   public TaxonboxWikiModel getWikiModel() {
     return wikiModel;
   }
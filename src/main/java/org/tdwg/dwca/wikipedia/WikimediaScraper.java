@@ -2,7 +2,12 @@ package org.tdwg.dwca.wikipedia;
 
 import com.beust.jcommander.internal.Maps;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
 import org.gbif.utils.ExtendedResponse;
 import org.gbif.utils.HttpClient;
 import org.jsoup.Jsoup;
@@ -11,23 +16,43 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
 import org.tdwg.dwca.wikipedia.taxonbox.Media;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public class WikimediaScraper {
   private static final Logger LOG = LoggerFactory.getLogger(WikimediaScraper.class);
   private final HttpClient http;
+  private static final int CACHE_SIZE = 100000;
   private final Map<String, String> licenses = Maps.newHashMap();
   private Writer noLicenses;
+  // cached for media known to be missing on commons
+  private static final Image MISSING = new Image();
+  private Cache<String, Image> cache = newCache();
+  private MediaStore store;
+  private String commons = WikipediaUtils.WIKI_BASE;
+  private CommonsMetadataClient api;
 
   public WikimediaScraper(HttpClient http, File noLicenseFile) throws IOException {
+    this(http, noLicenseFile, false);
+  }
+
+  /**
+   * @param append if true urls are appended to an existing noLicenseFile, e.g. when resuming a run
+   */
+  public WikimediaScraper(HttpClient http, File noLicenseFile, boolean append) throws IOException {
     this(http);
     if (noLicenseFile != null) {
-      noLicenses = new FileWriter(noLicenseFile);
+      noLicenses = new FileWriter(noLicenseFile, append);
     }
   }
 
@@ -81,17 +106,219 @@ public class WikimediaScraper {
     }
   }
 
+  /**
+   * @return a new, empty cache of scraped media metadata which can be shared by several scrapers
+   */
+  public static Cache<String, Image> newCache() {
+    return CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+  }
+
+  /**
+   * Uses the given metadata cache instead of the scrapers own one,
+   * e.g. to share metadata of media used in several wikipedia languages.
+   */
+  public WikimediaScraper withCache(Cache<String, Image> cache) {
+    this.cache = cache;
+    return this;
+  }
+
+  /**
+   * Keeps scraped metadata in the given persistent store, so later runs do not request the same media again.
+   */
+  public WikimediaScraper withStore(MediaStore store) {
+    this.store = store;
+    return this;
+  }
+
+  /**
+   * Scrapes media pages from another wiki than wikimedia commons, e.g. a mirror.
+   * @param wikiBase the wiki url that page titles are appended to, e.g. https://commons.wikimedia.org/wiki/
+   */
+  public WikimediaScraper withCommons(String wikiBase) {
+    this.commons = wikiBase;
+    return this;
+  }
+
+  private String link(Media img) {
+    return commons + "File:" + WikipediaUtils.normalizeFilename(img.getUrl());
+  }
+
+  /**
+   * Looks up media metadata with the MediaWiki api of the given wiki in batches of up to 50 files
+   * instead of scraping the html file pages one by one.
+   * @param apiUrl the api.php endpoint, e.g. {@link CommonsMetadataClient#COMMONS_API}. Null or empty to scrape html pages
+   */
+  public WikimediaScraper withApi(String apiUrl) {
+    api = Strings.isNullOrEmpty(apiUrl) ? null : new CommonsMetadataClient(http, apiUrl);
+    return this;
+  }
+
+  /**
+   * @return the number of media best scraped together, 1 if every media is scraped on its own
+   */
+  public int getBatchSize() {
+    return api == null ? 1 : CommonsMetadataClient.BATCH_SIZE;
+  }
+
   public void scrape(Media img) {
+    if (api != null) {
+      scrape(Collections.singletonList(img));
+      return;
+    }
+    if (fromCache(img)) {
+      return;
+    }
     try {
-      parse(WikipediaUtils.getImageWikiLink(img.getUrl()), img);
+      int status = parse(link(img), img);
       img.setPublisher("Wikimedia Commons");
+      if (status / 100 == 2) {
+        Image metadata = new Image();
+        copyMetadata(img, metadata);
+        cache.put(img.getUrl(), metadata);
+        if (store != null) {
+          store.put(img.getUrl(), metadata);
+        }
+      } else if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+        // temporary failures are retried
+        cache.put(img.getUrl(), MISSING);
+        if (store != null) {
+          store.putMissing(img.getUrl());
+        }
+      }
 
     } catch (Exception e) {
       LOG.warn("Cannot scrape image metadata for {}", img.getUrl());
     }
   }
 
-  private void parse(String url, Media img) throws IOException, URISyntaxException {
+  /**
+   * Scrapes the metadata of several media at once.
+   * With an api configured all media not yet cached are looked up with one request per {@link #getBatchSize()} files,
+   * otherwise every media page is scraped on its own.
+   */
+  public void scrape(Collection<? extends Media> media) {
+    if (api == null) {
+      media.forEach(this::scrape);
+      return;
+    }
+    ListMultimap<String, Media> pending = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    for (Media m : media) {
+      if (m.getUrl() != null && !fromCache(m)) {
+        pending.put(m.getUrl(), m);
+      }
+    }
+    for (List<String> batch : Iterables.partition(pending.keySet(), CommonsMetadataClient.BATCH_SIZE)) {
+      Map<String, Optional<Map<String, String>>> found;
+      try {
+        found = api.lookup(batch);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Cannot look up metadata for {} media: {}", batch.size(), e.getMessage());
+        continue;
+      }
+      for (String file : batch) {
+        Optional<Map<String, String>> values = found.get(file);
+        if (values == null) {
+          LOG.warn("No metadata returned for media {}", file);
+          continue;
+        }
+        Image metadata = new Image();
+        metadata.setPublisher("Wikimedia Commons");
+        if (values.isPresent()) {
+          setMetadata(metadata, values.get());
+          cache.put(file, metadata);
+          if (store != null) {
+            store.put(file, metadata);
+          }
+        } else {
+          cache.put(file, MISSING);
+          if (store != null) {
+            store.putMissing(file);
+          }
+        }
+        for (Media m : pending.get(file)) {
+          copyMetadata(metadata, m);
+          if (values.isPresent() && noLicenses != null && Strings.isNullOrEmpty(m.getLicense())) {
+            write("No image license found for " + link(m));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies cached or stored metadata to the media.
+   * @return true if the media does not need to be scraped
+   */
+  private boolean fromCache(Media img) {
+    Image cached = img.getUrl() == null ? null : cache.getIfPresent(img.getUrl());
+    if (cached == null && img.getUrl() != null && store != null) {
+      MediaStore.Entry stored = store.get(img.getUrl());
+      switch (stored.getStatus()) {
+        case MISSING:
+          cached = MISSING;
+          cache.put(img.getUrl(), cached);
+          break;
+        case FOUND:
+          cached = stored.getMetadata();
+          cache.put(img.getUrl(), cached);
+          break;
+      }
+    }
+    if (cached == MISSING) {
+      img.setPublisher("Wikimedia Commons");
+      return true;
+    }
+    if (cached != null) {
+      copyMetadata(cached, img);
+      if (noLicenses != null && Strings.isNullOrEmpty(img.getLicense())) {
+        write("No image license found for " + link(img));
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Maps the extmetadata fields of the commons api, preferring our own names for well known license codes.
+   */
+  private void setMetadata(Media img, Map<String, String> values) {
+    img.setAuthor(values.get("Artist"));
+    img.setDate(values.get("DateTimeOriginal"));
+    img.setDescription(values.get("ImageDescription"));
+    img.setSource(values.get("Credit"));
+    String code = values.get("License");
+    if (code != null && licenses.containsKey(code.toLowerCase())) {
+      setLicense(img, code);
+    }
+    if (Strings.isNullOrEmpty(img.getLicense())) {
+      img.setLicense(values.get("LicenseShortName"));
+    }
+    setLicense(img, code);
+  }
+
+  static void copyMetadata(Media from, Media to) {
+    to.setAuthor(from.getAuthor());
+    to.setDate(from.getDate());
+    to.setDescription(from.getDescription());
+    to.setLicense(from.getLicense());
+    to.setPublisher(from.getPublisher());
+    to.setSource(from.getSource());
+  }
+
+  private void write(String line) {
+    try {
+      noLicenses.write(line);
+    } catch (IOException e) {
+      LOG.warn("Cannot log missing license for {}", line);
+    }
+  }
+
+  /**
+   * @return the http status code of the commons page, metadata is only parsed for successful responses
+   */
+  private int parse(String url, Media img) throws IOException, URISyntaxException {
     Document doc = null;
     try {
     ExtendedResponse resp = null;
@@ -100,13 +327,13 @@ public class WikimediaScraper {
         doc = Jsoup.parse(resp.getContent());
       } else {
         LOG.warn("Failed to retrieve media object {}. HTTP {}", url, resp.getStatusCode());
-        return;
+        return resp.getStatusCode();
       }
     } catch (URISyntaxException | IllegalArgumentException e) {
       LOG.debug("Failed to retrieve media object {}. Try again with plain URL connection: {}", url, e.getMessage());
       // try with plain URL connection which avoids URI instances that refuse some wikipedia URLs having quotes
       InputStream stream = new URL(url).openStream();
-      doc = Jsoup.parse(stream, null, WikipediaUtils.WIKI_BASE);
+      doc = Jsoup.parse(stream, null, commons);
     }
 
     Element summary = doc.getElementById("mw-imagepage-content");
@@ -144,6 +371,7 @@ public class WikimediaScraper {
         noLicenses.write("No image metadata found for " + url);
       }
     }
+    return HttpURLConnection.HTTP_OK;
   }
 
   /**
@@ -1,20 +1,29 @@
 package org.tdwg.dwca.wikipedia;
 
 import com.beust.jcommander.Parameter;
+import com.google.common.collect.Lists;
 import org.gbif.api.vocabulary.Language;
 import org.tdwg.dwca.wikipedia.cli.LanguageConverter;
 
 import javax.validation.constraints.NotNull;
 import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.List;
 
 public class WikipediaConfig {
   @Parameter(names = {"-r", "--repo"}, description = "Directory to download wikipedia dumps to. If last versions are found a conditional get download will be done. Defaults to /tmp/wikipedia-data")
   public File repo = new File("/tmp/wikipedia-data");
 
-  @Parameter(names = {"-l", "--lang"}, description = "Wikipedia language file to parse (en, es, fr, de).", required = true, converter = LanguageConverter.class)
+  @Parameter(names = {"-l", "--lang"}, description = "Comma separated wikipedia languages to parse (en, es, fr, de). Several languages are parsed concurrently sharing the thread budget and media caches, each into its own archive.", required = true, converter = LanguageConverter.class)
+  public List<Language> langs = Lists.newArrayList();
+
+  /**
+   * The single wikipedia language to build an archive for.
+   */
   @NotNull
   public Language lang;
 
@@ -27,9 +36,98 @@ public class WikipediaConfig {
   @Parameter(names = {"-f", "--footnotes"}, description = "If true footnotes found in descriptions are expanded and kept")
   public boolean footnotes = false;
 
+  @Parameter(names = {"--chunks"}, description = "Number of chunks to download the dump with in parallel using resumable range requests, verified against the published checksums. Defaults to 0 which downloads the dump in a single request")
+  public int chunks = 0;
+
+  @Parameter(names = {"--stream"}, description = "If true the dump is parsed while it is being downloaded instead of waiting for the download to finish. Falls back to a regular download if streaming fails. Cannot be combined with checkpoints. Defaults to false")
+  public boolean stream = false;
+
+  @Parameter(names = {"-m", "--multistream"}, description = "If true the multistream variant of the dump together with its index is used, allowing the bz2 streams to be decompressed in parallel. Defaults to false")
+  public boolean multistream = false;
+
+  @Parameter(names = {"-t", "--threads"}, description = "Number of threads to use for decompressing multistream dumps. Defaults to the number of available processors")
+  public int threads = Runtime.getRuntime().availableProcessors();
+
+  @Parameter(names = {"-s", "--shards"}, description = "Number of shards to parse a multistream dump with in parallel. Each shard writes its own archive which are merged at the end. Defaults to 1")
+  public int shards = 1;
+
+  @Parameter(names = {"-w", "--workers"}, description = "Number of render workers extracting taxa in a pipeline that separates dump reading, rendering, media scraping and archive writing. Defaults to 0 which processes all pages sequentially on the dump reading thread")
+  public int workers = 0;
+
+  @Parameter(names = {"--mediaWorkers"}, description = "Maximum number of concurrent media metadata lookups on wikimedia commons, used by the pipeline and when updating an archive. Defaults to 5")
+  public int mediaWorkers = 5;
+
+  @Parameter(names = {"--pageQueue"}, description = "Maximum number of pages waiting for the pipeline render workers. Defaults to 1000")
+  public int pageQueueSize = 1000;
+
+  @Parameter(names = {"--mediaQueue"}, description = "Maximum number of taxon records waiting for the pipeline media workers. Defaults to 1000")
+  public int mediaQueueSize = 1000;
+
+  @Parameter(names = {"--writerQueue"}, description = "Maximum number of taxon records waiting for the pipeline writer. Defaults to 1000")
+  public int writerQueueSize = 1000;
+
+  @Parameter(names = {"--mediaCacheDays"}, description = "Days for which scraped commons media metadata is kept in the repo and reused by later runs, including media missing on commons. Defaults to 30, 0 disables the persistent cache")
+  public int mediaCacheDays = 30;
+
+  @Parameter(names = {"--taxonomyCacheDays"}, description = "Days for which scraped Template:Taxonomy pages of automatic taxoboxes are kept in the repo and reused by later runs, including missing pages. Defaults to 30, 0 disables the persistent cache")
+  public int taxonomyCacheDays = 30;
+
+  @Parameter(names = {"--offlineTaxonomy"}, description = "If true all Template:Taxonomy pages are read from the english dump before any language is parsed, downloading it first unless offline, so automatic taxoboxes are resolved without requesting wikipedia. Defaults to false")
+  public boolean offlineTaxonomy = false;
+
+  @Parameter(names = {"--commonsApi"}, description = "MediaWiki api used to look up commons media metadata in batches of 50 files. Set to an empty value to scrape the html file pages one by one instead. Defaults to https://commons.wikimedia.org/w/api.php")
+  public String commonsApi = CommonsMetadataClient.COMMONS_API;
+
+  @Parameter(names = {"--singleParse"}, description = "If true every page is rendered by bliki in a single pass, taking sections and interlanguage links from that one result instead of rendering each section separately. Defaults to false")
+  public boolean singleParse = false;
+
+  @Parameter(names = {"--maxRenderMillis"}, description = "Maximum time in milliseconds to render a single page. Templates and sections beyond it are skipped and the page is reported. As the time depends on the machine load, archives of the same dump may differ. Defaults to 0 for no limit")
+  public int maxRenderMillis = 0;
+
+  @Parameter(names = {"--maxTemplateDepth"}, description = "Maximum depth of nested templates expanded on a single page. Deeper templates are skipped and the page is reported. Defaults to 0 for no limit")
+  public int maxTemplateDepth = 0;
+
+  @Parameter(names = {"--maxPageText"}, description = "Maximum number of description characters rendered from a single page. Sections beyond it are skipped and the page is reported. Defaults to 0 for no limit")
+  public int maxPageText = 0;
+
+  @Parameter(names = {"-c", "--checkpoint"}, description = "Number of pages after which the archive written so far is flushed and a checkpoint is saved in the repo, allowing an interrupted run to be resumed. Defaults to 0 which disables checkpoints")
+  public int checkpoint = 0;
+
+  @Parameter(names = {"--resume"}, description = "If true parsing resumes from the last checkpoint in the repo instead of starting with the first page. Requires --checkpoint. Defaults to false")
+  public boolean resume = false;
+
+  @Parameter(names = {"--changes"}, description = "Comma separated dates (yyyyMMdd) of adds-changes dumps to incrementally update the previous archive with instead of parsing the full dump. Dates should be given in chronological order")
+  public List<String> changes = Lists.newArrayList();
+
+  @Parameter(names = {"--previous"}, description = "The previous archive to update with adds-changes dumps. Defaults to the archive in the repo")
+  public File previous;
+
+  @Parameter(names = {"--deleted"}, description = "Optional text file with ids of deleted pages, one per line, to be removed from the previous archive in incremental updates")
+  public File deleted;
+
   @Parameter(names = "--help", help = true)
   private boolean help;
 
+  /**
+   * @return a copy of this configuration for a single language
+   */
+  public WikipediaConfig forLanguage(Language language) {
+    WikipediaConfig copy = new WikipediaConfig();
+    try {
+      for (Field f : WikipediaConfig.class.getDeclaredFields()) {
+        if (!Modifier.isStatic(f.getModifiers())) {
+          f.setAccessible(true);
+          f.set(copy, f.get(this));
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot copy configuration", e);
+    }
+    copy.lang = language;
+    copy.langs = Lists.newArrayList(language);
+    return copy;
+  }
+
   public File getDwcaFile() {
     return getRepoFile("wikipedia-" + langIso() + "-dwca.zip");
   }
@@ -38,10 +136,61 @@ public class WikipediaConfig {
     return new File(repo, name);
   }
 
+  /**
+   * @return the directory holding the checkpoint and the archive segments written so far
+   */
+  public File getCheckpointDir() {
+    return getRepoFile("wikipedia-" + langIso() + "-checkpoint");
+  }
+
+  /**
+   * @return the directory of the persistent commons media metadata, shared by all languages
+   */
+  public File getMediaStoreDir() {
+    return getRepoFile("commons-metadata");
+  }
+
+  /**
+   * @return the directory of the persistent taxonomy template cache, shared by all languages
+   */
+  public File getTaxonomyStoreDir() {
+    return getRepoFile("taxonomy-templates");
+  }
+
   public File getDumpFile() {
+    if (multistream) {
+      return getRepoFile(langIso()+"-wikipedia-multistream.xml.bz2");
+    }
     return getRepoFile(langIso()+"-wikipedia.xml.bz2");
   }
 
+  /**
+   * @return the local index file of the multistream dump
+   */
+  public File getDumpIndexFile() {
+    return getRepoFile(langIso()+"-wikipedia-multistream-index.txt.bz2");
+  }
+
+  /**
+   * @param date the dump date in the form yyyyMMdd
+   * @return the local adds-changes dump file for the given date
+   */
+  public File getChangesFile(String date) {
+    return getRepoFile(langIso()+"-wikipedia-changes-"+date+".xml.bz2");
+  }
+
+  /**
+   * @param date the dump date in the form yyyyMMdd
+   */
+  public URL getChangesUrl(String date) {
+    try {
+      return URI.create(String.format("https://dumps.wikimedia.org/other/incr/%swiki/%s/%swiki-%s-pages-meta-hist-incr.xml.bz2",
+          langIso(), date, langIso(), date)).toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException("Cannot build wikipedia URL", e);
+    }
+  }
+
   private String langIso() {
     return lang.getIso2LetterCode();
   }
@@ -54,7 +203,30 @@ public class WikipediaConfig {
     }
   }
   public URI getWikipediaDumpUri() {
-    return URI.create(String.format("https://dumps.wikimedia.org/%swiki/latest/%swiki-latest-pages-articles.xml.bz2", langIso(), langIso()));
+    return getWikipediaDumpUri(multistream ? "pages-articles-multistream.xml.bz2" : "pages-articles.xml.bz2");
+  }
+
+  public URL getWikipediaDumpIndexUrl() {
+    try {
+      return getWikipediaDumpUri("pages-articles-multistream-index.txt.bz2").toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException("Cannot build wikipedia URL", e);
+    }
+  }
+
+  /**
+   * @return the sha1 checksums published for the latest dump files
+   */
+  public URL getWikipediaChecksumUrl() {
+    try {
+      return getWikipediaDumpUri("sha1sums.txt").toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException("Cannot build wikipedia URL", e);
+    }
+  }
+
+  private URI getWikipediaDumpUri(String file) {
+    return URI.create(String.format("https://dumps.wikimedia.org/%swiki/latest/%swiki-latest-%s", langIso(), langIso(), file));
   }
 
 
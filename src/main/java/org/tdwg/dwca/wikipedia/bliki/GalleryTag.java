@@ -19,15 +19,16 @@ import java.util.regex.Pattern;
 public class GalleryTag extends TaxonTag {
   private final static Logger LOG = LoggerFactory.getLogger(GalleryTag.class);
   private static Pattern IMAGES = Pattern.compile("(?:File|Image):([^|\n]+)\\s*(?:\\| *([^|\n]+))?", Pattern.CASE_INSENSITIVE);
-  private static TaxonboxWikiModel internal;
   private static PlainTextConverter converter = new PlainTextConverter();
+  // bliki clones the tag for every gallery, all clones keep the model of the page
+  private final TaxonboxWikiModel wikiModel;
 
-  public GalleryTag() {
+  /**
+   * @param wikiModel the model rendering the pages with this tag
+   */
+  public GalleryTag(TaxonboxWikiModel wikiModel) {
     super("gallery");
-  }
-
-  void setWikiModel(TaxonboxWikiModel wikiModel) {
-    internal = new TaxonboxWikiModel(wikiModel);
+    this.wikiModel = wikiModel;
   }
 
   @Override
@@ -49,7 +50,7 @@ public class GalleryTag extends TaxonTag {
 
   private String parseTitle(String title) {
     try {
-      return internal.render(converter, title);
+      return wikiModel.getGalleryModel().render(converter, title);
     } catch (IOException e) {
       LOG.error("Error parsing title {}", title, e);
     }
@@ -1,21 +1,28 @@
 package org.tdwg.dwca.wikipedia.bliki;
 
+import com.google.common.collect.Maps;
+import info.bliki.htmlcleaner.TagToken;
 import info.bliki.wiki.model.Configuration;
 import org.tdwg.dwca.wikipedia.taxonbox.TaxonboxWikiModel;
 
-public class TaxonConfiguration extends Configuration {
-  private static GalleryTag galleryTag = new GalleryTag();
+import java.util.Map;
 
-  static {
-    TAG_TOKEN_MAP.put("gallery", galleryTag);
-  }
+public class TaxonConfiguration extends Configuration {
 
   public static TaxonConfiguration DEFAULT_CONFIGURATION = new TaxonConfiguration();
 
   public TaxonConfiguration() {
   }
 
-  public static void setWikiModel(TaxonboxWikiModel wikiModel) {
-    galleryTag.setWikiModel(wikiModel);
+  /**
+   * The shared bliki tag map must not hold any model specific tags,
+   * so every wiki model gets its own copy with taxon tags bound to the model.
+   *
+   * @return a new tag map with the default bliki tags and taxon tags for the given model
+   */
+  public static Map<String, TagToken> newTokenMap(TaxonboxWikiModel wikiModel) {
+    Map<String, TagToken> tags = Maps.newHashMap(DEFAULT_CONFIGURATION.getTokenMap());
+    tags.put("gallery", new GalleryTag(wikiModel));
+    return tags;
   }
 }
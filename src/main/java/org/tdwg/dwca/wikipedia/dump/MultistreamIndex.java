@@ -0,0 +1,234 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * The index file accompanying a wikipedia pages-articles-multistream dump.
+ * Every line of the bzipped index is of the form offset:pageId:title
+ * with the offset being the byte position of the independent bz2 stream that contains the page.
+ * Each stream holds 100 pages, the very first stream holds the xml header and siteinfo
+ * and the last stream following the highest indexed offset the closing mediawiki tag.
+ *
+ * See https://meta.wikimedia.org/wiki/Data_dumps/Dump_format#Multistream_dumps
+ */
+public class MultistreamIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(MultistreamIndex.class);
+
+  private final long[] offsets;
+  // the smallest page id of every stream
+  private final long[] pageIds;
+
+  /**
+   * A byte range [start, end) of the dump file holding complete bz2 streams.
+   * All but the last block hold exactly one stream, the last also includes the footer stream.
+   */
+  public static class Block {
+    public final long start;
+    public final long end;
+
+    public Block(long start, long end) {
+      Preconditions.checkArgument(start < end, "Empty block %s-%s", start, end);
+      this.start = start;
+      this.end = end;
+    }
+
+    public int size() {
+      return (int) (end - start);
+    }
+
+    @Override
+    public String toString() {
+      return "Block{" + start + "-" + end + '}';
+    }
+  }
+
+  private MultistreamIndex(long[] offsets, long[] pageIds) {
+    this.offsets = offsets;
+    this.pageIds = pageIds;
+  }
+
+  /**
+   * Reads a bzipped multistream index file keeping only the distinct, sorted stream offsets.
+   */
+  public static MultistreamIndex read(File indexFile) throws IOException {
+    LOG.info("Reading multistream index {}", indexFile);
+    try (InputStream in = new BZip2CompressorInputStream(new FileInputStream(indexFile), true)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Reads an uncompressed index stream.
+   */
+  public static MultistreamIndex read(InputStream in) throws IOException {
+    TreeMap<Long, Long> offsets = new TreeMap<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int colon = line.indexOf(':');
+      int colon2 = line.indexOf(':', colon + 1);
+      if (colon > 0 && colon2 > colon) {
+        long offset = Long.parseLong(line.substring(0, colon));
+        long pageId = Long.parseLong(line.substring(colon + 1, colon2));
+        Long minId = offsets.get(offset);
+        if (minId == null || pageId < minId) {
+          offsets.put(offset, pageId);
+        }
+      }
+    }
+    long[] arr = new long[offsets.size()];
+    long[] ids = new long[offsets.size()];
+    int idx = 0;
+    for (Map.Entry<Long, Long> o : offsets.entrySet()) {
+      arr[idx] = o.getKey();
+      ids[idx++] = o.getValue();
+    }
+    LOG.info("Multistream index contains {} streams", arr.length);
+    return new MultistreamIndex(arr, ids);
+  }
+
+  /**
+   * Reads an uncompressed index stream, selecting only the streams that hold a page with a matching title.
+   * Used to read a few pages of a dump, e.g. all templates of a kind, without decompressing the entire dump.
+   *
+   * @param fileLength the total length of the multistream dump file in bytes
+   * @return the header stream followed by all streams holding a matching page in dump order.
+   * The footer stream is only included if the last stream of the dump holds a matching page
+   */
+  public static List<Block> blocksWithTitles(InputStream in, long fileLength, Predicate<String> titles) throws IOException {
+    TreeSet<Long> offsets = new TreeSet<>();
+    TreeSet<Long> matching = new TreeSet<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int colon = line.indexOf(':');
+      int colon2 = line.indexOf(':', colon + 1);
+      if (colon > 0 && colon2 > colon) {
+        long offset = Long.parseLong(line.substring(0, colon));
+        offsets.add(offset);
+        if (titles.test(line.substring(colon2 + 1))) {
+          matching.add(offset);
+        }
+      }
+    }
+    List<Block> blocks = Lists.newArrayList();
+    if (!offsets.isEmpty()) {
+      blocks.add(new Block(0, offsets.first()));
+      for (long o : matching) {
+        Long end = offsets.higher(o);
+        blocks.add(new Block(o, end == null ? fileLength : end));
+      }
+    }
+    LOG.info("{} of {} streams hold matching pages", matching.size(), offsets.size());
+    return blocks;
+  }
+
+  /**
+   * @return the number of indexed page streams, not counting the header and footer streams
+   */
+  public int size() {
+    return offsets.length;
+  }
+
+  /**
+   * Lists all bz2 streams of the dump file in dump order, including the leading header stream
+   * and the trailing footer stream.
+   *
+   * @param fileLength the total length of the multistream dump file in bytes
+   */
+  public List<Block> blocks(long fileLength) {
+    List<Block> blocks = Lists.newArrayList();
+    long start = 0;
+    for (long o : offsets) {
+      if (o > start) {
+        blocks.add(new Block(start, o));
+      }
+      start = o;
+    }
+    if (fileLength > start) {
+      blocks.add(new Block(start, fileLength));
+    }
+    return blocks;
+  }
+
+  /**
+   * Locates the stream holding a page, assuming page ids increase throughout the dump as they do in wikimedia dumps.
+   *
+   * @return the offset of the last stream starting with a page id not greater than the given one,
+   * or the offset of the first page stream if there is none
+   */
+  public long offsetOf(long pageId) {
+    Preconditions.checkState(offsets.length > 0, "Multistream index without page streams");
+    int idx = Arrays.binarySearch(pageIds, pageId);
+    if (idx < 0) {
+      // insertion point minus one is the last stream starting before the page
+      idx = Math.max(0, -idx - 2);
+    }
+    return offsets[idx];
+  }
+
+  /**
+   * Lists the header stream followed by all streams from the one holding the given page onwards.
+   * Used to resume parsing a dump close to the given page without decompressing all preceding streams.
+   *
+   * @param fileLength the total length of the multistream dump file in bytes
+   */
+  public List<Block> blocksFrom(long fileLength, long pageId) {
+    long offset = offsetOf(pageId);
+    List<Block> blocks = Lists.newArrayList();
+    for (Block b : blocks(fileLength)) {
+      if (blocks.isEmpty() || b.start >= offset) {
+        blocks.add(b);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Splits the page streams of the dump into contiguous byte ranges of roughly equal compressed size.
+   * Every shard starts with the header stream so it can be parsed as a standalone xml document.
+   * Only the last shard includes the footer stream with the closing mediawiki tag.
+   *
+   * @param fileLength the total length of the multistream dump file in bytes
+   * @param shards the maximum number of shards to create
+   * @return list of shards, each being a list of blocks in dump order
+   */
+  public List<List<Block>> shards(long fileLength, int shards) {
+    List<Block> blocks = blocks(fileLength);
+    Preconditions.checkArgument(blocks.size() > 1, "Multistream dump without page streams");
+    Block header = blocks.get(0);
+    List<Block> pages = blocks.subList(1, blocks.size());
+    long bytesPerShard = (fileLength - header.end) / Math.max(1, shards) + 1;
+
+    List<List<Block>> result = Lists.newArrayList();
+    List<Block> shard = null;
+    long shardEnd = header.end;
+    for (Block b : pages) {
+      if (shard == null || (b.start >= shardEnd && result.size() < shards)) {
+        shard = Lists.newArrayList(header);
+        result.add(shard);
+        shardEnd = b.start + bytesPerShard;
+      }
+      shard.add(b);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,164 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream over a multistream bz2 wikipedia dump that decompresses the independent bz2 streams
+ * on a pool of threads and serves the uncompressed bytes strictly in dump order.
+ * Only a small window of blocks ahead of the reader is decompressed at any time, so memory stays bounded
+ * and a slow consumer applies back pressure to the decompressing threads.
+ *
+ * The stream is not thread safe and should be consumed by a single reader.
+ */
+public class MultistreamInputStream extends InputStream {
+  private static final Logger LOG = LoggerFactory.getLogger(MultistreamInputStream.class);
+
+  private final FileChannel channel;
+  private final ExecutorService exec;
+  private final Iterator<MultistreamIndex.Block> blocks;
+  private final Deque<Future<byte[]>> window = new ArrayDeque<>();
+  private final int windowSize;
+  private byte[] current = new byte[0];
+  private int pos = 0;
+  private boolean closed = false;
+
+  /**
+   * @param dump    the multistream bz2 dump file
+   * @param blocks  the bz2 streams to decompress and concatenate, in the order they should be served
+   * @param threads number of threads to decompress with
+   */
+  public MultistreamInputStream(File dump, List<MultistreamIndex.Block> blocks, int threads) throws IOException {
+    this.channel = FileChannel.open(dump.toPath(), StandardOpenOption.READ);
+    this.blocks = blocks.iterator();
+    int poolSize = Math.max(1, threads);
+    this.windowSize = 2 * poolSize;
+    this.exec = Executors.newFixedThreadPool(poolSize, new ThreadFactoryBuilder()
+        .setNameFormat("bz2-block-%d")
+        .setDaemon(true)
+        .build());
+    LOG.info("Decompressing {} bz2 streams of {} with {} threads", blocks.size(), dump, poolSize);
+    fillWindow();
+  }
+
+  /**
+   * Opens a multistream dump using its index to locate the bz2 streams.
+   */
+  public static MultistreamInputStream open(File dump, File index, int threads) throws IOException {
+    MultistreamIndex idx = MultistreamIndex.read(index);
+    return new MultistreamInputStream(dump, idx.blocks(dump.length()), threads);
+  }
+
+  private void fillWindow() {
+    while (window.size() < windowSize && blocks.hasNext()) {
+      final MultistreamIndex.Block b = blocks.next();
+      window.add(exec.submit(() -> decompress(b)));
+    }
+  }
+
+  private byte[] decompress(MultistreamIndex.Block block) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(block.size());
+    long position = block.start;
+    while (buf.hasRemaining()) {
+      int read = channel.read(buf, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of dump file reading " + block);
+      }
+      position += read;
+    }
+    // the last block also contains the footer stream, so allow for concatenated streams
+    try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(buf.array()), true)) {
+      // uncompressed blocks are usually 5-10 times larger
+      ByteArrayOutputStream out = new ByteArrayOutputStream(block.size() * 8);
+      IOUtils.copy(in, out);
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Moves on to the next decompressed block.
+   * @return false if all blocks have been consumed
+   */
+  private boolean nextBlock() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (pos >= current.length) {
+      Future<byte[]> f = window.poll();
+      if (f == null) {
+        return false;
+      }
+      try {
+        current = f.get();
+        pos = 0;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while decompressing dump", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to decompress dump block", e.getCause());
+      }
+      fillWindow();
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pos >= current.length && !nextBlock()) {
+      return -1;
+    }
+    return current[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (pos >= current.length && !nextBlock()) {
+      return -1;
+    }
+    int n = Math.min(len, current.length - pos);
+    System.arraycopy(current, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return current.length - pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      for (Future<byte[]> f : window) {
+        f.cancel(true);
+      }
+      window.clear();
+      exec.shutdownNow();
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.collect.ImmutableSet;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import info.bliki.wiki.namespaces.INamespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Streaming reader for mediawiki xml dumps based on a StAX pull parser and a drop in replacement for bliki's WikiXMLParser.
+ *
+ * Pages outside the accepted namespaces and redirects are skipped at the xml level without ever
+ * materialising their text. The text of accepted pages is collected in a single buffer reused for all pages.
+ * Only the latest revision of a page is passed on to the IArticleFilter.
+ */
+public class PageReader {
+  private static final Logger LOG = LoggerFactory.getLogger(PageReader.class);
+  private static final Integer MAIN = INamespace.NamespaceCode.MAIN_NAMESPACE_KEY.code;
+  // the JDK limits the accumulated size of all entities per document which a full dump exceeds by far
+  private static final String TOTAL_ENTITY_SIZE_LIMIT = "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit";
+
+  private final InputStream in;
+  private final IArticleFilter filter;
+  private final Set<Integer> namespaces;
+  private final Siteinfo siteinfo = new Siteinfo();
+  private final StringBuilder text = new StringBuilder(64 * 1024);
+  private IArticleFilter skipListener;
+  private XMLStreamReader xml;
+  private long pageCounter = 0;
+  private long skippedCounter = 0;
+
+  /**
+   * Reader that only passes on main namespace articles.
+   */
+  public PageReader(InputStream in, IArticleFilter filter) {
+    this(in, filter, ImmutableSet.of(MAIN));
+  }
+
+  /**
+   * @param namespaces the integer keys of all namespaces to pass on
+   */
+  public PageReader(InputStream in, IArticleFilter filter, Set<Integer> namespaces) {
+    this.in = in;
+    this.filter = filter;
+    this.namespaces = ImmutableSet.copyOf(namespaces);
+  }
+
+  private static XMLInputFactory factory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    try {
+      factory.setProperty(TOTAL_ENTITY_SIZE_LIMIT, 0);
+    } catch (IllegalArgumentException e) {
+      LOG.debug("XML parser {} does not support a totalEntitySizeLimit", factory.getClass().getName());
+    }
+    return factory;
+  }
+
+  /**
+   * Reads the entire dump, passing all accepted pages to the article filter.
+   * The input stream is not closed.
+   */
+  public void parse() throws IOException {
+    try {
+      xml = factory().createXMLStreamReader(in, "UTF-8");
+      try {
+        while (xml.hasNext()) {
+          if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+            if (is("page")) {
+              readPage();
+            } else if (is("siteinfo")) {
+              readSiteinfo();
+            }
+          }
+        }
+      } finally {
+        xml.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to read wiki dump", e);
+    }
+    LOG.info("Read {} pages, skipped {}", pageCounter, skippedCounter);
+  }
+
+  private boolean is(String name) {
+    return name.equals(xml.getLocalName());
+  }
+
+  private void readSiteinfo() throws XMLStreamException {
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (is("sitename")) {
+        siteinfo.setSitename(xml.getElementText());
+      } else if (is("base")) {
+        siteinfo.setBase(xml.getElementText());
+      } else if (is("generator")) {
+        siteinfo.setGenerator(xml.getElementText());
+      } else if (is("case")) {
+        siteinfo.setCharacterCase(xml.getElementText());
+      } else if (is("namespaces")) {
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+          String key = xml.getAttributeValue(null, "key");
+          String name = xml.getElementText();
+          if (key != null && !name.isEmpty()) {
+            siteinfo.addNamespace(key, name);
+          }
+        }
+      } else {
+        skipElement();
+      }
+    }
+  }
+
+  private void readPage() throws XMLStreamException, IOException {
+    pageCounter++;
+    WikiArticle page = new WikiArticle();
+    Integer ns = null;
+    boolean hasText = false;
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (is("title")) {
+        page.setTitle(xml.getElementText(), siteinfo);
+      } else if (is("ns")) {
+        ns = Integer.valueOf(xml.getElementText().trim());
+      } else if (is("id")) {
+        page.setId(xml.getElementText());
+      } else if (is("redirect") || !accept(page, ns)) {
+        skippedCounter++;
+        skipRest();
+        if (skipListener != null) {
+          if (ns != null) {
+            page.setIntegerNamespace(ns);
+          }
+          skipListener.process(page, siteinfo);
+        }
+        return;
+      } else if (is("revision")) {
+        hasText = readRevision(page);
+      } else {
+        skipElement();
+      }
+    }
+    if (ns != null) {
+      page.setIntegerNamespace(ns);
+    }
+    if (hasText) {
+      page.setText(text.toString());
+    }
+    filter.process(page, siteinfo);
+  }
+
+  /**
+   * Decides based on the explicit ns element or, for older dumps without it, on the title prefix.
+   */
+  private boolean accept(WikiArticle page, Integer ns) {
+    return namespaces.contains(ns == null ? page.getIntegerNamespace() : ns);
+  }
+
+  /**
+   * @return true if the revision contained a text element which was read into the shared text buffer
+   */
+  private boolean readRevision(WikiArticle page) throws XMLStreamException {
+    boolean hasText = false;
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (is("id")) {
+        page.setRevisionId(xml.getElementText());
+      } else if (is("timestamp")) {
+        page.setTimeStamp(xml.getElementText());
+      } else if (is("text")) {
+        readText();
+        hasText = true;
+      } else {
+        skipElement();
+      }
+    }
+    return hasText;
+  }
+
+  /**
+   * Copies the character data of the current element into the reused text buffer without creating intermediate strings.
+   */
+  private void readText() throws XMLStreamException {
+    text.setLength(0);
+    int depth = 1;
+    while (depth > 0) {
+      switch (xml.next()) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        default:
+      }
+    }
+  }
+
+  /**
+   * Skips the current element including all its children.
+   */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Skips the current element and all remaining siblings up to the end of the enclosing page element.
+   */
+  private void skipRest() throws XMLStreamException {
+    skipElement();
+    skipElement();
+  }
+
+  /**
+   * @param skipListener optional filter to receive all skipped pages, having an id and title but no text
+   */
+  public void setSkipListener(IArticleFilter skipListener) {
+    this.skipListener = skipListener;
+  }
+
+  public Siteinfo getSiteinfo() {
+    return siteinfo;
+  }
+
+  /**
+   * @return number of pages read so far, including skipped ones
+   */
+  public long getPageCounter() {
+    return pageCounter;
+  }
+
+  /**
+   * @return number of redirects and pages in other namespaces skipped so far
+   */
+  public long getSkippedCounter() {
+    return skippedCounter;
+  }
+}
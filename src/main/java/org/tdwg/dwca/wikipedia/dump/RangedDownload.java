@@ -0,0 +1,368 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a large file in parallel chunks using HTTP range requests.
+ * Every chunk is written to its own part file next to the target, so an interrupted download,
+ * either a broken connection or a killed process, resumes with the bytes still missing.
+ * Part files are only reused if the remote file did not change in between.
+ *
+ * If a checksum file in the md5sums or sha1sums format published with wikimedia dumps is given,
+ * the assembled file is verified before it replaces the target.
+ * Servers without range support are downloaded in a single, non resumable request.
+ */
+public class RangedDownload {
+  private static final Logger LOG = LoggerFactory.getLogger(RangedDownload.class);
+  private static final int TIMEOUT = 60 * 1000;
+  private static final int MAX_ATTEMPTS = 5;
+  private static final Pattern DATE = Pattern.compile("\\d{8}");
+
+  private final URL url;
+  private final File target;
+  private final int chunks;
+  private URL checksums;
+  private long retryDelay = 1000;
+
+  /**
+   * @param chunks number of chunks to download in parallel
+   */
+  public RangedDownload(URL url, File target, int chunks) {
+    this.url = url;
+    this.target = target;
+    this.chunks = Math.max(1, chunks);
+  }
+
+  /**
+   * @param checksums url of a md5sums or sha1sums file listing the checksum of the downloaded file
+   */
+  public RangedDownload checksums(URL checksums) {
+    this.checksums = checksums;
+    return this;
+  }
+
+  /**
+   * @param millis base delay before retrying a failed chunk, multiplied by the number of failed attempts
+   */
+  public RangedDownload retryDelay(long millis) {
+    this.retryDelay = millis;
+    return this;
+  }
+
+  private static class Chunk {
+    final File file;
+    final long start;
+    final long end;
+
+    Chunk(File file, long start, long end) {
+      this.file = file;
+      this.start = start;
+      this.end = end;
+    }
+
+    long length() {
+      return end - start + 1;
+    }
+  }
+
+  private HttpURLConnection open(String method) throws IOException {
+    HttpURLConnection con = (HttpURLConnection) url.openConnection();
+    con.setRequestMethod(method);
+    con.setConnectTimeout(TIMEOUT);
+    con.setReadTimeout(TIMEOUT);
+    return con;
+  }
+
+  /**
+   * Downloads the file unless the existing target is up to date.
+   *
+   * @return true if a new file was downloaded
+   */
+  public boolean download() throws IOException {
+    HttpURLConnection head = open("HEAD");
+    if (head.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      throw new IOException("Failed to access " + url + ", HTTP " + head.getResponseCode());
+    }
+    final long length = head.getContentLengthLong();
+    final long lastModified = head.getLastModified();
+    final boolean ranges = "bytes".equalsIgnoreCase(head.getHeaderField("Accept-Ranges")) && length > 0;
+    head.disconnect();
+
+    if (target.exists() && lastModified > 0 && target.lastModified() >= lastModified && target.length() == length) {
+      LOG.info("Existing {} is up to date", target);
+      return false;
+    }
+
+    List<Chunk> parts = prepareChunks(ranges ? chunks : 1, length, lastModified);
+    LOG.info("Downloading {} with {} bytes in {} chunks", url, length, parts.size());
+    ExecutorService exec = Executors.newFixedThreadPool(parts.size(), new ThreadFactoryBuilder()
+        .setNameFormat("download-%d")
+        .build());
+    try {
+      List<Future<?>> results = Lists.newArrayList();
+      for (final Chunk c : parts) {
+        results.add(exec.submit(() -> {
+          downloadChunk(c, ranges);
+          return null;
+        }));
+      }
+      for (Future<?> f : results) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while downloading " + url, e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Failed to download " + url, e.getCause());
+    } finally {
+      exec.shutdownNow();
+    }
+
+    assemble(parts);
+    if (lastModified > 0) {
+      target.setLastModified(lastModified);
+    }
+    LOG.info("Downloaded {} bytes into {}", target.length(), target);
+    return true;
+  }
+
+  private File metaFile() {
+    return new File(target.getPath() + ".parts");
+  }
+
+  /**
+   * Reuses existing part files if they were written for the same remote file and chunk layout,
+   * otherwise removes them.
+   */
+  private List<Chunk> prepareChunks(int n, long length, long lastModified) throws IOException {
+    Properties meta = new Properties();
+    meta.setProperty("url", url.toString());
+    meta.setProperty("length", String.valueOf(length));
+    meta.setProperty("lastModified", String.valueOf(lastModified));
+    meta.setProperty("chunks", String.valueOf(n));
+
+    File metaFile = metaFile();
+    boolean resume = false;
+    if (metaFile.exists() && length > 0) {
+      Properties existing = new Properties();
+      try (InputStream in = new FileInputStream(metaFile)) {
+        existing.load(in);
+      }
+      resume = existing.equals(meta);
+    }
+
+    List<Chunk> parts = Lists.newArrayList();
+    long chunkSize = length > 0 ? (length + n - 1) / n : -1;
+    for (int idx = 0; idx < n; idx++) {
+      File f = new File(target.getPath() + ".part" + idx);
+      if (!resume) {
+        Files.deleteIfExists(f.toPath());
+      } else if (f.exists()) {
+        LOG.info("Resume {} with {} bytes", f, f.length());
+      }
+      long start = idx * chunkSize;
+      long end = length > 0 ? Math.min(length, start + chunkSize) - 1 : -1;
+      if (length <= 0 || start <= end) {
+        parts.add(new Chunk(f, start, end));
+      }
+    }
+    try (OutputStream out = new FileOutputStream(metaFile)) {
+      meta.store(out, "chunks of " + target.getName());
+    }
+    return parts;
+  }
+
+  private void downloadChunk(Chunk c, boolean ranges) throws IOException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        if (ranges) {
+          downloadRange(c);
+        } else {
+          downloadAll(c);
+        }
+        return;
+      } catch (IOException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        LOG.warn("Failed to download {}, attempt {}: {}", c.file.getName(), attempt, e.getMessage());
+        Thread.sleep(retryDelay * attempt);
+      }
+    }
+  }
+
+  private void downloadRange(Chunk c) throws IOException {
+    long done = c.file.exists() ? c.file.length() : 0;
+    if (done == c.length()) {
+      return;
+    }
+    if (done > c.length()) {
+      throw new IOException("Part file " + c.file + " larger than its chunk");
+    }
+    HttpURLConnection con = open("GET");
+    con.setRequestProperty("Range", "bytes=" + (c.start + done) + "-" + c.end);
+    try {
+      if (con.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+        throw new IOException("Range request for " + c.file.getName() + " failed with HTTP " + con.getResponseCode());
+      }
+      try (InputStream in = con.getInputStream();
+           OutputStream out = new FileOutputStream(c.file, true)) {
+        copy(in, out);
+      }
+    } finally {
+      con.disconnect();
+    }
+    if (c.file.length() != c.length()) {
+      throw new IOException("Incomplete chunk " + c.file.getName() + ": " + c.file.length() + " of " + c.length() + " bytes");
+    }
+  }
+
+  private void downloadAll(Chunk c) throws IOException {
+    HttpURLConnection con = open("GET");
+    try {
+      if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Failed to download " + url + ", HTTP " + con.getResponseCode());
+      }
+      try (InputStream in = con.getInputStream();
+           OutputStream out = new FileOutputStream(c.file, false)) {
+        copy(in, out);
+      }
+      long expected = con.getContentLengthLong();
+      if (expected >= 0 && c.file.length() != expected) {
+        throw new IOException("Incomplete download " + c.file.getName() + ": " + c.file.length() + " of " + expected + " bytes");
+      }
+    } finally {
+      con.disconnect();
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buf = new byte[64 * 1024];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      out.write(buf, 0, n);
+    }
+  }
+
+  /**
+   * Concatenates all chunks, verifies the checksum and moves the result into place.
+   */
+  private void assemble(List<Chunk> parts) throws IOException {
+    String expected = expectedChecksum();
+    MessageDigest digest = expected == null ? null : digest();
+    File tmp = new File(target.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      for (Chunk c : parts) {
+        try (InputStream in = digest == null ? new FileInputStream(c.file) : new DigestInputStream(new FileInputStream(c.file), digest)) {
+          copy(in, out);
+        }
+      }
+    }
+    if (digest != null) {
+      String actual = BaseEncoding.base16().lowerCase().encode(digest.digest());
+      if (!actual.equalsIgnoreCase(expected)) {
+        FileUtils.deleteQuietly(tmp);
+        cleanup(parts);
+        throw new IOException("Checksum mismatch for " + target.getName() + ": expected " + expected + " but was " + actual);
+      }
+      LOG.info("Verified checksum {} of {}", actual, target.getName());
+    }
+    Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    cleanup(parts);
+  }
+
+  private void cleanup(List<Chunk> parts) {
+    for (Chunk c : parts) {
+      FileUtils.deleteQuietly(c.file);
+    }
+    FileUtils.deleteQuietly(metaFile());
+  }
+
+  private MessageDigest digest() throws IOException {
+    try {
+      return MessageDigest.getInstance(checksums.getPath().contains("sha1") ? "SHA-1" : "MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Looks up the checksum of the downloaded file.
+   * Wikimedia lists dated file names, so the -latest- part of the url is matched against any date.
+   *
+   * @return the hex checksum or null if no checksum file was given or it does not list the file
+   */
+  private String expectedChecksum() {
+    if (checksums == null) {
+      return null;
+    }
+    String name = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+    try {
+      HttpURLConnection con = (HttpURLConnection) checksums.openConnection();
+      con.setConnectTimeout(TIMEOUT);
+      con.setReadTimeout(TIMEOUT);
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] parts = line.trim().split("\\s+", 2);
+          if (parts.length == 2 && matches(name, parts[1].replaceFirst("^\\*", ""))) {
+            return parts[0];
+          }
+        }
+      } finally {
+        con.disconnect();
+      }
+      LOG.warn("No checksum for {} listed in {}", name, checksums);
+    } catch (IOException e) {
+      LOG.warn("Cannot read checksums from {}: {}", checksums, e.getMessage());
+    }
+    return null;
+  }
+
+  private static boolean matches(String name, String listed) {
+    if (name.equals(listed)) {
+      return true;
+    }
+    int latest = name.indexOf("-latest-");
+    if (latest < 0) {
+      return false;
+    }
+    String prefix = name.substring(0, latest + 1);
+    String suffix = name.substring(latest + "-latest".length());
+    if (!Strings.isNullOrEmpty(listed) && listed.startsWith(prefix) && listed.endsWith(suffix)
+        && listed.length() > prefix.length() + suffix.length()) {
+      return DATE.matcher(listed.substring(prefix.length(), listed.length() - suffix.length())).matches();
+    }
+    return false;
+  }
+}
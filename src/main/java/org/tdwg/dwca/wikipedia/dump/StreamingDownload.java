@@ -0,0 +1,121 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.AutoCloseInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+
+/**
+ * Downloads a file while its bytes are consumed at the same time, e.g. by a decompressor and dump parser.
+ * Everything read from the stream is also written to a partial file next to the target,
+ * which only replaces the target once the download completed entirely.
+ * A broken download never touches the target file.
+ */
+public class StreamingDownload implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(StreamingDownload.class);
+  private static final int TIMEOUT = 60 * 1000;
+
+  private final HttpURLConnection con;
+  private final File target;
+  private final File part;
+  private final InputStream stream;
+  private final long lastModified;
+  private boolean completed = false;
+
+  private StreamingDownload(HttpURLConnection con, File target) throws IOException {
+    this.con = con;
+    this.target = target;
+    this.part = new File(target.getPath() + ".part");
+    this.lastModified = con.getLastModified();
+    // the connection stream must not be read again once exhausted
+    InputStream in = new AutoCloseInputStream(con.getInputStream());
+    this.stream = new TeeInputStream(in, new BufferedOutputStream(new FileOutputStream(part)), true);
+  }
+
+  /**
+   * Starts a conditional download, sending the last modification date of an existing target file.
+   *
+   * @return the started download or null if the existing target is up to date
+   */
+  public static StreamingDownload open(URL url, File target) throws IOException {
+    HttpURLConnection con = (HttpURLConnection) url.openConnection();
+    con.setConnectTimeout(TIMEOUT);
+    con.setReadTimeout(TIMEOUT);
+    if (target.exists()) {
+      con.setIfModifiedSince(target.lastModified());
+    }
+    int status = con.getResponseCode();
+    if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      LOG.info("{} not modified since {}", url, new Date(target.lastModified()));
+      con.disconnect();
+      return null;
+    }
+    if (status != HttpURLConnection.HTTP_OK) {
+      con.disconnect();
+      throw new IOException("Failed to download " + url + ", HTTP " + status);
+    }
+    LOG.info("Streaming {} with {} bytes into {}", url, con.getContentLengthLong(), target);
+    return new StreamingDownload(con, target);
+  }
+
+  /**
+   * @return the downloaded bytes, which are written to disk while being read
+   */
+  public InputStream getStream() {
+    return stream;
+  }
+
+  /**
+   * @return the last modification date announced by the server or the current time if unknown
+   */
+  public Date getLastModified() {
+    return lastModified > 0 ? new Date(lastModified) : new Date();
+  }
+
+  /**
+   * Reads and stores any remaining bytes not yet consumed, verifies the size
+   * and moves the downloaded file into place.
+   */
+  public void complete() throws IOException {
+    IOUtils.copy(stream, NullOutputStream.NULL_OUTPUT_STREAM);
+    stream.close();
+    long expected = con.getContentLengthLong();
+    if (expected >= 0 && part.length() != expected) {
+      throw new IOException("Incomplete download of " + target.getName() + ": " + part.length() + " of " + expected + " bytes");
+    }
+    Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    if (lastModified > 0) {
+      // allows conditional downloads later on
+      target.setLastModified(lastModified);
+    }
+    completed = true;
+    LOG.info("Downloaded {} bytes into {}", target.length(), target);
+  }
+
+  /**
+   * Closes the connection, removing the partial file unless the download was completed.
+   */
+  @Override
+  public void close() {
+    IOUtils.closeQuietly(stream);
+    con.disconnect();
+    if (!completed && part.exists()) {
+      LOG.info("Remove incomplete download {}", part);
+      part.delete();
+    }
+  }
+}
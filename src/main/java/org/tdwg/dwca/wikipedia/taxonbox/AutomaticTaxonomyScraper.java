@@ -1,34 +1,206 @@
 package org.tdwg.dwca.wikipedia.taxonbox;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tdwg.dwca.wikipedia.PropertiesStore;
 import org.tdwg.dwca.wikipedia.WikipediaUtils;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Scrapes the rank, extinct flag and higher classification of automatic taxoboxes from the english Template:Taxonomy pages.
+ * Scraped taxonomy pages are cached in memory and shared by all wiki models of the JVM,
+ * so parallel shards, workers and languages only request every taxonomy page once.
+ * With a store configured scraped pages are also kept on disk for later runs.
+ * Taxonomy pages that do not exist are cached as negative entries.
+ * With an index of the taxonomy templates of a dump no pages are requested at all.
+ */
 public class AutomaticTaxonomyScraper {
-  private static final String PREFIX = "http://en.wikipedia.org/wiki/Template:Taxonomy/";
+  static final String WIKI = "http://en.wikipedia.org/wiki/";
+  private static final String TEMPLATE = "Template:Taxonomy/";
   private static final Logger LOG = LoggerFactory.getLogger(AutomaticTaxonomyScraper.class);
+  private static final int CACHE_SIZE = 100000;
+  private static final Cache<String, Taxonomy> CACHE = CacheBuilder.newBuilder()
+      .maximumSize(CACHE_SIZE)
+      .recordStats()
+      .build();
+  private static final AtomicLong REQUESTS = new AtomicLong();
+  private static final AtomicLong MISSING_PAGES = new AtomicLong();
+  private static volatile String wiki = WIKI;
+  private static volatile PropertiesStore store;
+  private static volatile TaxonomyIndex index;
+
+  /**
+   * The rank, extinct flag and higher taxa scraped from a single taxonomy page in page order.
+   */
+  static class Taxonomy {
+    private static final Taxonomy MISSING = new Taxonomy();
+    String rank;
+    String extinct;
+    final List<String[]> higherTaxa = Lists.newArrayList();
+
+    private Properties toProperties() {
+      Properties props = new Properties();
+      if (this == MISSING) {
+        props.setProperty("missing", "true");
+      } else {
+        if (rank != null) {
+          props.setProperty("rank", rank);
+        }
+        if (extinct != null) {
+          props.setProperty("extinct", extinct);
+        }
+        for (int idx = 0; idx < higherTaxa.size(); idx++) {
+          props.setProperty("higher." + idx, higherTaxa.get(idx)[0] + "\t" + higherTaxa.get(idx)[1]);
+        }
+      }
+      return props;
+    }
+
+    private static Taxonomy fromProperties(Properties props) {
+      if (props.containsKey("missing")) {
+        return MISSING;
+      }
+      Taxonomy tax = new Taxonomy();
+      tax.rank = props.getProperty("rank");
+      tax.extinct = props.getProperty("extinct");
+      String ht;
+      for (int idx = 0; (ht = props.getProperty("higher." + idx)) != null; idx++) {
+        tax.higherTaxa.add(ht.split("\t", 2));
+      }
+      return tax;
+    }
+  }
+
+  /**
+   * Keeps scraped taxonomy pages in the given store, so later runs do not request them again.
+   * @param store the store to use or null to only cache in memory
+   */
+  public static void useStore(PropertiesStore store) {
+    AutomaticTaxonomyScraper.store = store;
+  }
+
+  /**
+   * Resolves all taxonomy templates with the given index instead of scraping wikipedia.
+   * @param index the taxonomy templates of an english dump or null to scrape wikipedia
+   */
+  public static void useIndex(TaxonomyIndex index) {
+    AutomaticTaxonomyScraper.index = index;
+  }
+
+  /**
+   * @return true if taxonomy templates are resolved with an index of an english dump
+   */
+  public static boolean hasIndex() {
+    return index != null;
+  }
+
+  @VisibleForTesting
+  static void useWiki(String wikiBase) {
+    wiki = wikiBase;
+    CACHE.invalidateAll();
+  }
 
   public static void updateTaxonInfo(TaxonInfo taxon) {
+    TaxonomyIndex idx = index;
+    if (idx != null) {
+      updateFromIndex(idx, taxon);
+      return;
+    }
     if (!Strings.isNullOrEmpty(taxon.getScientificName())) {
-      String url = PREFIX + WikipediaUtils.normalizeFilename(taxon.getScientificName());
+      final String name = WikipediaUtils.normalizeFilename(taxon.getScientificName());
       try {
-        parse(url, taxon);
-      } catch (IOException e) {
+        Taxonomy tax = CACHE.get(name, () -> load(name));
+        if (tax == Taxonomy.MISSING) {
+          taxon.addRemark("No taxonomy found at %s", wiki + TEMPLATE + name);
+          return;
+        }
+        apply(taxon, tax, true);
+      } catch (ExecutionException e) {
         // keep it with a remark
-        taxon.addRemark("Failed to retrieve taxonomy from {}", url);
+        taxon.addRemark("Failed to retrieve taxonomy from %s", wiki + TEMPLATE + name);
       }
     }
   }
 
-  private static void parse(String url, TaxonInfo taxon) throws IOException {
+  /**
+   * Looks up the template of the scientific name or, as speciesboxes do, the template of its genus.
+   * The rank and extinct flag of a genus template are not those of the species.
+   */
+  private static void updateFromIndex(TaxonomyIndex idx, TaxonInfo taxon) {
+    if (!Strings.isNullOrEmpty(taxon.getScientificName())) {
+      Taxonomy tax = idx.lookup(taxon.getScientificName());
+      if (tax != null) {
+        apply(taxon, tax, true);
+        return;
+      }
+    }
+    if (!Strings.isNullOrEmpty(taxon.getGenus())) {
+      Taxonomy tax = idx.lookup(taxon.getGenus());
+      if (tax != null) {
+        apply(taxon, tax, false);
+        return;
+      }
+    }
+    if (!Strings.isNullOrEmpty(taxon.getScientificName())) {
+      taxon.addRemark("No taxonomy found for %s", taxon.getScientificName());
+    }
+  }
+
+  private static void apply(TaxonInfo taxon, Taxonomy tax, boolean self) {
+    if (self && tax.extinct != null) {
+      taxon.setExtinct(tax.extinct);
+    }
+    if (self && tax.rank != null) {
+      taxon.setRankVerbatim(tax.rank);
+      if (taxon.getRank() == null) {
+        taxon.setRank(Rank.fromString(tax.rank));
+      }
+    }
+    for (String[] ht : tax.higherTaxa) {
+      setHigherTaxon(taxon, Rank.fromString(ht[0]), ht[1]);
+    }
+  }
+
+  private static Taxonomy load(String name) throws IOException {
+    PropertiesStore s = store;
+    if (s != null) {
+      Properties props = s.get(TEMPLATE + name);
+      if (props != null) {
+        return Taxonomy.fromProperties(props);
+      }
+    }
+    Taxonomy tax = parse(wiki + TEMPLATE + name);
+    if (s != null) {
+      s.put(TEMPLATE + name, tax.toProperties());
+    }
+    return tax;
+  }
+
+  /**
+   * @return the scraped taxonomy or {@link Taxonomy#MISSING} if the page does not exist
+   * @throws IOException for all other failures, which are not cached
+   */
+  private static Taxonomy parse(String url) throws IOException {
+    Taxonomy tax = new Taxonomy();
     try {
+      REQUESTS.incrementAndGet();
       Document doc = Jsoup.connect(url).get();
       Element content = doc.getElementById("mw-content-text");
       if(content != null){
@@ -41,7 +213,7 @@ public class AutomaticTaxonomyScraper {
             for (Element row : rows) {
               Elements cols = row.getElementsByTag("td");
               if (cols.size() == 2) {
-                setKeyVal(taxon, cols.get(0).text(), cols.get(1));
+                addKeyVal(tax, cols.get(0).text(), cols.get(1));
               }
             }
           }
@@ -55,45 +227,76 @@ public class AutomaticTaxonomyScraper {
             for (Element row : rows) {
               Elements cols = row.getElementsByTag("td");
               if (cols.size() == 2) {
-                setHigherTaxon(taxon, cols.get(0).text(), cols.get(1).getElementsByTag("span").first());
+                addHigherTaxon(tax, cols.get(0).text(), cols.get(1).getElementsByTag("span").first());
               }
             }
           }
         }
       }
+    } catch (HttpStatusException e) {
+      if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND || e.getStatusCode() == HttpURLConnection.HTTP_GONE) {
+        MISSING_PAGES.incrementAndGet();
+        LOG.debug("Taxonomy page {} does not exist", url);
+        return Taxonomy.MISSING;
+      }
+      throw e;
     } catch (Exception e) {
       throw new IOException(e);
     }
+    return tax;
+  }
+
+  /**
+   * @return hit and miss counts of the in memory cache, a miss is answered by the store or the wiki
+   */
+  public static CacheStats getCacheStats() {
+    return CACHE.stats();
+  }
+
+  /**
+   * @return number of taxonomy pages requested from the wiki
+   */
+  public static long getRequests() {
+    return REQUESTS.get();
+  }
+
+  /**
+   * @return number of requested taxonomy pages that do not exist
+   */
+  public static long getMissingPages() {
+    return MISSING_PAGES.get();
   }
 
   /**
    * We ignore all clades and unranked parents and only keep the recognizable ranks.
    */
-  private static void setHigherTaxon(TaxonInfo taxon, String rankVerbatim, Element valueElem) {
-    if (valueElem != null && !Strings.isNullOrEmpty(rankVerbatim)) {
-      Rank rank = Rank.fromString(rankVerbatim);
-      if (rank != null) {
-        // value is the first span
-        Element valueElem2 = valueElem.getElementsByTag("span").first();
-        if (valueElem2 != null) {
-          // ignore extinct symbol
-          String value = valueElem2.text().replace("†", "").trim();
-          switch (rank) {
-            case Kingdom: taxon.setKingdom(value); break;
-            case Phylum: taxon.setPhylum(value); break;
-            case Class: taxon.setClassis(value); break;
-            case Order: taxon.setOrder(value); break;
-            case Family: taxon.setFamily(value); break;
-            case Genus: taxon.setGenus(value); break;
-            case Subgenus: taxon.setSubgenus(value); break;
-          }
-        }
+  private static void addHigherTaxon(Taxonomy tax, String rankVerbatim, Element valueElem) {
+    if (valueElem != null && !Strings.isNullOrEmpty(rankVerbatim) && Rank.fromString(rankVerbatim) != null) {
+      // value is the first span
+      Element valueElem2 = valueElem.getElementsByTag("span").first();
+      if (valueElem2 != null) {
+        // ignore extinct symbol
+        tax.higherTaxa.add(new String[]{rankVerbatim, valueElem2.text().replace("†", "").trim()});
       }
     }
   }
 
+  private static void setHigherTaxon(TaxonInfo taxon, Rank rank, String value) {
+    switch (rank) {
+      case Kingdom: taxon.setKingdom(value); break;
+      case Phylum: taxon.setPhylum(value); break;
+      case Class: taxon.setClassis(value); break;
+      case Order: taxon.setOrder(value); break;
+      case Family: taxon.setFamily(value); break;
+      case Genus: taxon.setGenus(value); break;
+      case Subgenus: taxon.setSubgenus(value); break;
+    }
+  }
 
-  private static void setKeyVal(TaxonInfo taxon, String key, Element valueElem) {
+  /**
+   * Only the extinct flag and rank are kept, later rows override earlier ones.
+   */
+  private static void addKeyVal(Taxonomy tax, String key, Element valueElem) {
     if (valueElem != null) {
       Element codeElem = valueElem.getElementsByTag("code").first();
       String val;
@@ -102,15 +305,11 @@ public class AutomaticTaxonomyScraper {
       } else {
         val = valueElem.text();
       }
-      key = key.replaceAll("[-_:]", "").trim();
-      if ("extinct".equalsIgnoreCase(key)) {
-        taxon.setExtinct(val);
-
-      } else if ("rank".equalsIgnoreCase(key)) {
-        taxon.setRankVerbatim(val);
-        if (taxon.getRank() == null) {
-          taxon.setRank(Rank.fromString(val));
-        }
+      String k = key.replaceAll("[-_:]", "").trim();
+      if ("extinct".equalsIgnoreCase(k)) {
+        tax.extinct = val;
+      } else if ("rank".equalsIgnoreCase(k)) {
+        tax.rank = val;
       }
     }
   }
@@ -0,0 +1,86 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The writable properties of a bean class, resolved once per class with the java beans introspector
+ * just like commons-beanutils does, but compiled into method handles.
+ * Setting a property is a single map lookup and setter call, unknown properties are a simple map miss
+ * instead of a NoSuchMethodException.
+ */
+class BeanSetters {
+  private static final ConcurrentMap<Class<?>, BeanSetters> CLASSES = Maps.newConcurrentMap();
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private static class Setter {
+    private final MethodHandle handle;
+    private final Class<?> type;
+
+    Setter(MethodHandle handle, Class<?> type) {
+      this.handle = handle;
+      this.type = type;
+    }
+  }
+
+  private final Map<String, Setter> setters;
+
+  private BeanSetters(Class<?> beanClass) {
+    ImmutableMap.Builder<String, Setter> builder = ImmutableMap.builder();
+    try {
+      BeanInfo info = Introspector.getBeanInfo(beanClass);
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+        Method m = pd.getWriteMethod();
+        if (m != null) {
+          builder.put(pd.getName(), new Setter(lookup.unreflect(m).asType(SETTER_TYPE), m.getParameterTypes()[0]));
+        }
+      }
+    } catch (IntrospectionException | IllegalAccessException e) {
+      throw new IllegalStateException("Cannot resolve setters of " + beanClass.getName(), e);
+    }
+    setters = builder.build();
+  }
+
+  /**
+   * @return the setters of the given bean class, resolved on first use
+   */
+  static BeanSetters of(Class<?> beanClass) {
+    return CLASSES.computeIfAbsent(beanClass, BeanSetters::new);
+  }
+
+  /**
+   * Sets a string value on a bean property.
+   *
+   * @return false if the bean has no setter for the property
+   * @throws IllegalArgumentException if the setter does not accept strings
+   * @throws InvocationTargetException if the setter itself failed
+   */
+  boolean set(Object bean, String property, String value) throws InvocationTargetException {
+    Setter setter = setters.get(property);
+    if (setter == null) {
+      return false;
+    }
+    if (value != null ? !setter.type.isAssignableFrom(String.class) : setter.type.isPrimitive()) {
+      throw new IllegalArgumentException("argument type mismatch, " + property + " requires " + setter.type.getSimpleName());
+    }
+    try {
+      setter.handle.invokeExact(bean, (Object) value);
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+    return true;
+  }
+}
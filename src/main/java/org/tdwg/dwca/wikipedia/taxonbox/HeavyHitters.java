@@ -0,0 +1,168 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the most frequent keys of an unbounded stream in bounded memory using the space saving algorithm.
+ * At most capacity keys are tracked, each with a single sample abbreviated to the maximum sample length.
+ * Once full, a new key replaces the least frequent one and inherits its count as the possible overcount.
+ *
+ * Counting known keys is lock free and can be shared by many threads, only new keys are added under a lock.
+ * The tracked keys are kept in a heap ordered by the last count seen under that lock, which never exceeds the current one.
+ * Evicting the least frequent key therefore only refreshes the stale counts at the top of the heap instead of scanning all keys.
+ * Increments racing with the eviction of their key may get lost, counts are estimates anyway.
+ */
+public class HeavyHitters {
+  private final int capacity;
+  private final int maxSampleLength;
+  private final ConcurrentMap<String, Counter> counters = Maps.newConcurrentMap();
+  private final PriorityQueue<Counter> byCount = new PriorityQueue<>(Comparator.comparingLong(c -> c.ordered));
+  private final LongAdder total = new LongAdder();
+
+  public static class Counter {
+    private final String key;
+    private final long error;
+    private final String sample;
+    private final LongAdder count = new LongAdder();
+    // count when last ordered in the heap, guarded by the heavy hitters lock
+    private long ordered;
+
+    private Counter(String key, long error, String sample) {
+      this.key = key;
+      this.error = error;
+      this.sample = sample;
+      this.ordered = error;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * @return the estimated count, which overcounts the real one by at most the error
+     */
+    public long getCount() {
+      return error + count.sum();
+    }
+
+    /**
+     * @return the maximum overcount inherited from the evicted key
+     */
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * @return the abbreviated sample given when the key was first counted, can be null
+     */
+    public String getSample() {
+      return sample;
+    }
+  }
+
+  public HeavyHitters(int capacity, int maxSampleLength) {
+    this.capacity = capacity;
+    this.maxSampleLength = maxSampleLength;
+  }
+
+  /**
+   * Counts a key once.
+   *
+   * @param sample supplies a sample for keys not yet tracked, only called for new keys
+   */
+  public void add(String key, Supplier<String> sample) {
+    add(key, 1, sample);
+  }
+
+  public void add(String key, long count, Supplier<String> sample) {
+    total.add(count);
+    Counter c = counters.get(key);
+    if (c == null) {
+      c = track(key, sample);
+    }
+    c.count.add(count);
+  }
+
+  private synchronized Counter track(String key, Supplier<String> sample) {
+    Counter c = counters.get(key);
+    if (c != null) {
+      return c;
+    }
+    long error = 0;
+    if (counters.size() >= capacity) {
+      Counter min = evictMin();
+      counters.remove(min.key);
+      error = min.getCount();
+    }
+    String s = sample == null ? null : sample.get();
+    c = new Counter(key, error, s == null ? null : StringUtils.abbreviate(s, Math.max(4, maxSampleLength)));
+    counters.put(key, c);
+    byCount.offer(c);
+    return c;
+  }
+
+  /**
+   * Removes the least frequent counter from the heap.
+   * Counts only grow, so the head is the minimum once its count is not above the ordered count of the next one.
+   * Stale heads are reordered with their current count.
+   */
+  private Counter evictMin() {
+    Counter min = byCount.poll();
+    long count = min.getCount();
+    while (count > min.ordered && !byCount.isEmpty() && count > byCount.peek().ordered) {
+      min.ordered = count;
+      byCount.offer(min);
+      min = byCount.poll();
+      count = min.getCount();
+    }
+    return min;
+  }
+
+  /**
+   * Forgets all tracked keys and counts.
+   */
+  public synchronized void clear() {
+    counters.clear();
+    byCount.clear();
+    total.reset();
+  }
+
+  /**
+   * @return the tracked keys ordered by their estimated count, most frequent first
+   */
+  public List<Counter> top() {
+    List<Counter> top = Lists.newArrayList(counters.values());
+    top.sort(Comparator.comparingLong(Counter::getCount).reversed().thenComparing(Counter::getKey));
+    return top;
+  }
+
+  /**
+   * @return true if the key is currently tracked
+   */
+  public boolean contains(String key) {
+    return counters.containsKey(key);
+  }
+
+  /**
+   * @return number of tracked keys
+   */
+  public int size() {
+    return counters.size();
+  }
+
+  /**
+   * @return the exact number of all counted occurrences, including untracked keys
+   */
+  public long getTotal() {
+    return total.sum();
+  }
+}
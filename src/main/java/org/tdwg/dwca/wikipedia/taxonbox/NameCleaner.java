@@ -0,0 +1,241 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+/**
+ * Cleans scientific names found in taxobox values by scanning their characters once,
+ * replacing the former chain of regular expressions and StringUtils.normalizeSpace.
+ *
+ * Instances reuse an internal buffer and are not thread safe, every wiki model keeps its own cleaner.
+ */
+class NameCleaner {
+  private final StringBuilder sb = new StringBuilder();
+  private boolean extinct;
+
+  /**
+   * Removes footnotes like &lt;ref name="x"&gt;...&lt;/ref&gt; and detects extinct symbols outside of them.
+   *
+   * @return the value without footnotes, each replaced by a space
+   */
+  String stripRefs(String val) {
+    extinct = false;
+    int idx = val.indexOf('<');
+    if (idx < 0) {
+      extinct = hasExtinctSymbol(val, 0, val.length());
+      return val;
+    }
+    sb.setLength(0);
+    int start = 0;
+    while (idx >= 0) {
+      int end = refEnd(val, idx);
+      if (end > 0) {
+        extinct |= hasExtinctSymbol(val, start, idx);
+        sb.append(val, start, idx).append(' ');
+        start = end;
+      }
+      idx = val.indexOf('<', end > 0 ? end : idx + 1);
+    }
+    extinct |= hasExtinctSymbol(val, start, val.length());
+    if (start == 0) {
+      return val;
+    }
+    sb.append(val, start, val.length());
+    return sb.toString();
+  }
+
+  /**
+   * @return true if the value given to the last stripRefs call contained an extinct symbol outside of footnotes
+   */
+  boolean isExtinct() {
+    return extinct;
+  }
+
+  /**
+   * Replaces quotes, brackets, pipes, extinct symbols, question marks and remarks like (or ...), (?), (plant) or (animal)
+   * with spaces and normalises whitespace exactly like StringUtils.normalizeSpace.
+   *
+   * @return the cleaned name or null if nothing is left
+   */
+  String clean(String rendered) {
+    sb.setLength(0);
+    final int len = rendered.length();
+    int whitespaces = 0;
+    boolean start = true;
+    int i = 0;
+    while (i < len) {
+      char c = cleanChar(rendered.charAt(i));
+      int next = i + 1;
+      if (c == '(') {
+        int end = bracketRemarkEnd(rendered, i);
+        if (end > 0) {
+          c = ' ';
+          next = end;
+        }
+      }
+      if (c == '?' || Character.isWhitespace(c)) {
+        if (whitespaces == 0 && !start) {
+          sb.append(' ');
+        }
+        whitespaces++;
+      } else {
+        start = false;
+        // like normalizeSpace, no break spaces become plain spaces but are not collapsed
+        sb.append(c == '\u00A0' ? ' ' : c);
+        whitespaces = 0;
+      }
+      i = next;
+    }
+    if (whitespaces > 0 && sb.length() > 0) {
+      sb.setLength(sb.length() - 1);
+    }
+    // StringUtils.normalizeSpace finally trims all control characters
+    int from = 0;
+    int to = sb.length();
+    while (from < to && sb.charAt(from) <= ' ') {
+      from++;
+    }
+    while (to > from && sb.charAt(to - 1) <= ' ') {
+      to--;
+    }
+    return from == to ? null : sb.substring(from, to);
+  }
+
+  /**
+   * Expands abbreviated names like V[ipera]. a[mmodytes]. transcaucasiana
+   *
+   * @param genus the genus of the page
+   * @param epithet the species epithet of the page, can be null
+   * @return the expanded name or null if the name does not start with the abbreviated genus
+   */
+  static String expandName(String name, String genus, String epithet) {
+    int i = skipSpaces(name, 0);
+    if (i + 1 >= name.length() || name.charAt(i) != genus.charAt(0) || name.charAt(i + 1) != '.') {
+      return null;
+    }
+    int rest = skipSpaces(name, i + 2);
+    if (epithet != null && !epithet.isEmpty() && rest + 1 < name.length()
+        && name.charAt(rest) == epithet.charAt(0) && name.charAt(rest + 1) == '.') {
+      return genus + " " + epithet + " " + name.substring(skipSpaces(name, rest + 2));
+    }
+    return genus + " " + name.substring(rest);
+  }
+
+  private static int skipSpaces(String x, int idx) {
+    while (idx < x.length() && x.charAt(idx) == ' ') {
+      idx++;
+    }
+    return idx;
+  }
+
+  private static boolean hasExtinctSymbol(String x, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = x.charAt(i);
+      if (c == '†' || c == '‡') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return space for all characters removed from names
+   */
+  private static char cleanChar(char c) {
+    switch (c) {
+      case '†':
+      case '‡':
+      case '"':
+      case '\'':
+      case '„':
+      case '“':
+      case '+':
+      case '|':
+      case '<':
+      case '>':
+      case '[':
+      case ']':
+        return ' ';
+      default:
+        return c;
+    }
+  }
+
+  /**
+   * Matches remarks like ( or something), (?), (plant) or (animal ) on the cleaned characters.
+   *
+   * @return the index after the closing bracket or -1 if there is no remark at idx
+   */
+  private static int bracketRemarkEnd(String x, int idx) {
+    final int len = x.length();
+    int i = idx + 1;
+    while (i < len && cleanChar(x.charAt(i)) == ' ') {
+      i++;
+    }
+    if (x.startsWith("or", i) && i + 2 < len && cleanChar(x.charAt(i + 2)) == ' ') {
+      // one or more characters up to the next bracket which must be a closing one
+      int j = i + 3;
+      while (j < len && x.charAt(j) != '(' && x.charAt(j) != ')') {
+        j++;
+      }
+      if (j < len && x.charAt(j) == ')' && j > i + 3) {
+        return j + 1;
+      }
+    }
+    for (String remark : new String[]{"?", "plant", "animal"}) {
+      if (x.startsWith(remark, i)) {
+        int j = i + remark.length();
+        while (j < len && cleanChar(x.charAt(j)) == ' ') {
+          j++;
+        }
+        if (j < len && x.charAt(j) == ')') {
+          return j + 1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index after a footnote starting at idx or -1 if there is none
+   */
+  private static int refEnd(String x, int idx) {
+    final int len = x.length();
+    int i = skipSpaces(x, idx + 1);
+    if (!x.regionMatches(true, i, "ref", 0, 3)) {
+      return -1;
+    }
+    i += 3;
+    // attributes
+    while (i < len && isRefAttributeChar(x.charAt(i))) {
+      i++;
+    }
+    if (i >= len || x.charAt(i) != '>') {
+      return -1;
+    }
+    // content
+    int contentStart = ++i;
+    while (i < len && x.charAt(i) != '<' && x.charAt(i) != '>') {
+      i++;
+    }
+    if (i == contentStart || i >= len || x.charAt(i) != '<') {
+      return -1;
+    }
+    // closing tag
+    i++;
+    if (i >= len || x.charAt(i) != '/') {
+      return -1;
+    }
+    i = skipSpaces(x, i + 1);
+    if (!x.regionMatches(true, i, "ref", 0, 3)) {
+      return -1;
+    }
+    i = skipSpaces(x, i + 3);
+    if (i >= len || x.charAt(i) != '>') {
+      return -1;
+    }
+    return i + 1;
+  }
+
+  private static boolean isRefAttributeChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+        || c == ' ' || c == '=' || c == '"' || c == '\'' || c == '_' || c == '-';
+  }
+}
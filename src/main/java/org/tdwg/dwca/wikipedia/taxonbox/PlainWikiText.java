@@ -0,0 +1,140 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+/**
+ * Converts trivial wiki text into plain text without going through bliki.
+ * Only a restricted grammar is supported: plain text, internal links like [[target]] or [[target|label]]
+ * and bold or italic quotes. Anything else, e.g. templates, tags, tables, external links, lists,
+ * namespaced links or entities, is left to the full wiki model.
+ */
+public class PlainWikiText {
+
+  private PlainWikiText() {
+  }
+
+  /**
+   * @return the plain text or null if the wiki text is not covered by the restricted grammar
+   */
+  public static String toPlainText(String wikiText) {
+    final int len = wikiText.length();
+    if (len > 0 && isLineStartMarkup(wikiText.charAt(0))) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(len);
+    int i = 0;
+    while (i < len) {
+      char c = wikiText.charAt(i);
+      switch (c) {
+        case '[':
+          i = appendLink(wikiText, i, sb);
+          if (i < 0) {
+            return null;
+          }
+          continue;
+
+        case '\'':
+          int end = i;
+          while (end < len && wikiText.charAt(end) == '\'') {
+            end++;
+          }
+          int quotes = end - i;
+          if (quotes == 1) {
+            sb.append(c);
+          } else if (quotes != 2 && quotes != 3 && quotes != 5) {
+            return null;
+          }
+          i = end;
+          continue;
+
+        case ':':
+          // urls become external links
+          if (wikiText.startsWith("//", i + 1)) {
+            return null;
+          }
+          break;
+
+        case '_':
+          // magic words like __NOTOC__
+          if (i + 1 < len && wikiText.charAt(i + 1) == '_') {
+            return null;
+          }
+          break;
+
+        case ']':
+        case '{':
+        case '}':
+        case '<':
+        case '>':
+        case '|':
+        case '&':
+        case '~':
+        case '=':
+        case '\n':
+        case '\r':
+          return null;
+      }
+      sb.append(c);
+      i++;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return true for characters starting lists, indentation, preformatted text or rulers at the start of a line
+   */
+  private static boolean isLineStartMarkup(char c) {
+    return c == '*' || c == '#' || c == ';' || c == ':' || c == '-' || Character.isWhitespace(c);
+  }
+
+  /**
+   * Appends the text of a simple internal link starting at idx.
+   * @return the index after the link or -1 if it is not a simple internal link
+   */
+  private static int appendLink(String wikiText, int idx, StringBuilder sb) {
+    if (!wikiText.startsWith("[[", idx)) {
+      return -1;
+    }
+    int end = wikiText.indexOf("]]", idx + 2);
+    if (end < 0) {
+      return -1;
+    }
+    int pipe = -1;
+    for (int i = idx + 2; i < end; i++) {
+      char c = wikiText.charAt(i);
+      switch (c) {
+        case '|':
+          if (pipe >= 0) {
+            return -1;
+          }
+          pipe = i;
+          break;
+
+        case '[':
+        case ']':
+        case '{':
+        case '}':
+        case '<':
+        case '>':
+        case '&':
+        case '\'':
+        case '\n':
+        case '\r':
+          return -1;
+
+        case ':':
+        case '#':
+        case '_':
+        case '%':
+          // namespaces, interwiki links, anchors and encoded titles
+          if (pipe < 0) {
+            return -1;
+          }
+      }
+    }
+    int start = pipe < 0 ? idx + 2 : pipe + 1;
+    if (start == end || wikiText.charAt(start) == ' ' || wikiText.charAt(end - 1) == ' ') {
+      return -1;
+    }
+    sb.append(wikiText, start, end);
+    return end + 2;
+  }
+}
@@ -0,0 +1,127 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * Cheap scanner over raw wiki text that detects taxobox and speciesbox templates without rendering the page.
+ * Template names are normalised the same way as in TaxonboxWikiModel, i.e. case, whitespace, underscores and hyphens
+ * are ignored, as is any namespace prefix like Template: or Vorlage:.
+ *
+ * The scanner errs on the side of caution: it may accept pages that turn out not to be species pages,
+ * but it never rejects a page the wiki model would have recognized.
+ */
+public class TaxoboxPrefilter {
+  private static final char[][] TEMPLATES;
+  private static final int MAX_LENGTH;
+
+  static {
+    Set<String> names = Sets.newHashSet(TaxonboxWikiModel.TAXOBOX_TEMPLATES);
+    names.addAll(TaxonboxWikiModel.SPECIESBOX_TEMPLATES);
+    TEMPLATES = new char[names.size()][];
+    int idx = 0;
+    int max = 0;
+    for (String name : names) {
+      TEMPLATES[idx++] = name.toCharArray();
+      max = Math.max(max, name.length());
+    }
+    MAX_LENGTH = max;
+  }
+
+  private TaxoboxPrefilter() {
+  }
+
+  /**
+   * @return true if the text contains a template call to one of the known taxobox or speciesbox templates
+   */
+  public static boolean matches(CharSequence text) {
+    if (text == null) {
+      return false;
+    }
+    final int len = text.length();
+    char[] buf = null;
+    int i = 0;
+    while (i < len - 1) {
+      if (text.charAt(i) != '{' || text.charAt(i + 1) != '{') {
+        i++;
+        continue;
+      }
+      if (buf == null) {
+        buf = new char[MAX_LENGTH];
+      }
+      // read the normalised template name
+      int n = 0;
+      i += 2;
+      while (i < len) {
+        char c = text.charAt(i);
+        if (c == '|' || c == '}' || c == '{') {
+          break;
+        } else if (c == '<') {
+          if (!startsWith(text, i, "<!--")) {
+            break;
+          }
+          // skip html comments
+          i = indexOf(text, i + 4, "-->");
+          if (i < 0) {
+            return false;
+          }
+          i += 3;
+          continue;
+        } else if (c == ':') {
+          // namespace prefix
+          n = 0;
+        } else if (!Character.isWhitespace(c) && c != '_' && c != '-') {
+          if (n < MAX_LENGTH) {
+            buf[n] = Character.toLowerCase(c);
+          }
+          n++;
+        }
+        i++;
+      }
+      if (n > 0 && n <= MAX_LENGTH && isTaxobox(buf, n)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTaxobox(char[] buf, int n) {
+    for (char[] tmpl : TEMPLATES) {
+      if (tmpl.length == n && equals(tmpl, buf, n)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean equals(char[] a, char[] b, int n) {
+    for (int i = 0; i < n; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(CharSequence text, int offset, String prefix) {
+    if (offset + prefix.length() > text.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (text.charAt(offset + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(CharSequence text, int from, String str) {
+    for (int i = from; i <= text.length() - str.length(); i++) {
+      if (startsWith(text, i, str)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
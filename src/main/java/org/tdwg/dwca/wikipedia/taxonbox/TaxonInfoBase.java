@@ -30,8 +30,6 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Base taxon info with all of the properties of interest.
@@ -181,26 +179,15 @@ abstract class TaxonInfoBase {
     if (name==null) return null;
 
     if (!Strings.isNullOrEmpty(getGenus())) {
-      Pattern gen = Pattern.compile("^ *"+genus.charAt(0)+"\\. *");
-      Matcher m = gen.matcher(getScientificName());
-      if (m.find()) {
-        String expandedName = m.replaceFirst(genus+" ");
-        String epithet=null;
-        if (!Strings.isNullOrEmpty(speciesEpithet)) {
-          epithet = speciesEpithet;
-        } else if (!Strings.isNullOrEmpty(species)) {
-          epithet = StringUtils.substringAfterLast(species, " ");
-        }
-
-        if (!Strings.isNullOrEmpty(epithet)) {
-          Pattern specEpi = Pattern.compile("^"+genus+" "+epithet.charAt(0)+ "\\. *");
-          m = specEpi.matcher(expandedName);
-          if (m.find()) {
-            expandedName = m.replaceFirst(getGenus()+" "+epithet+" ");
-          }
-        }
-
-        log.debug("Expanding abbreviated name {} with {}", getScientificName(), expandedName);
+      String epithet=null;
+      if (!Strings.isNullOrEmpty(speciesEpithet)) {
+        epithet = speciesEpithet;
+      } else if (!Strings.isNullOrEmpty(species)) {
+        epithet = StringUtils.substringAfterLast(species, " ");
+      }
+      String expandedName = NameCleaner.expandName(name, getGenus(), epithet);
+      if (expandedName != null) {
+        log.debug("Expanding abbreviated name {} with {}", name, expandedName);
         return expandedName;
       }
     }
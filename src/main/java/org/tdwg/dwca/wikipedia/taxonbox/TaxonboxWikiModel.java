@@ -1,18 +1,18 @@
 package org.tdwg.dwca.wikipedia.taxonbox;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Functions;
 import com.google.common.base.Strings;
 import com.google.common.collect.*;
 import info.bliki.extensions.scribunto.ScribuntoException;
+import info.bliki.htmlcleaner.ContentToken;
 import info.bliki.htmlcleaner.TagToken;
 import info.bliki.wiki.filter.ITextConverter;
 import info.bliki.wiki.filter.ParsedPageName;
 import info.bliki.wiki.filter.PlainTextConverter;
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.ITableOfContent;
 import info.bliki.wiki.model.WikiModel;
 import info.bliki.wiki.model.WikiModelContentException;
 import info.bliki.wiki.namespaces.INamespace;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,9 +24,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -37,8 +38,9 @@ import java.util.regex.Pattern;
 public class TaxonboxWikiModel extends WikiModel {
   private final static Logger LOG = LoggerFactory.getLogger(TaxonboxWikiModel.class);
 
-  private final static Set<String> TAXOBOX_TEMPLATES = Sets.newHashSet("taxobox", "automatictaxobox", "fichadetaxón",
+  final static Set<String> TAXOBOX_TEMPLATES = Sets.newHashSet("taxobox", "automatictaxobox", "fichadetaxón",
     "fichadetaxon");
+  final static Set<String> SPECIESBOX_TEMPLATES = Sets.newHashSet("speciesbox", "subspeciesbox", "infraspeciesbox");
   private final static Set<String> CITATION_TEMPLATES = Sets.newHashSet("cite", "citeweb", "citebook", "citejournal");
   private final static Set<String> FOSSIL_RANGE_TEMPLATES = Sets.newHashSet("fossilrange", "geologicalrange",
     "longfossilrange");
@@ -46,11 +48,6 @@ public class TaxonboxWikiModel extends WikiModel {
   private final static Set<String> PLAIN_LIST_TEMPLATES = Sets.newHashSet("plainlist", "flatlist");
   private final static Set<String> QUOTE_TEMPLATES = Sets.newHashSet("quote");
 
-  private static final Pattern REPL_REF_TAG = Pattern.compile("< *ref[a-zA-Z0-9 =\"\'_-]*>[^<>]+</ *ref *>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern IS_EXTINCT = Pattern.compile("[†‡]");
-  private static final Pattern CLEAN_NAMES = Pattern.compile("[†‡\"'„“+|<>\\[\\]]", Pattern.CASE_INSENSITIVE);
-  private static final Pattern REMOVE_QUESTION_MARK = Pattern.compile("\\?");
-  private static final Pattern REPL_BRACKET_REMARKS = Pattern.compile("\\( *(or [^()]+|\\?|plant|animal) *\\)");
   private final Pattern REMOVE_TEMPLATES = Pattern.compile("\\{\\{[a-zA-Z0-9-_ ]*\\}\\}");
 
   private static final Pattern BR_PATTERN = Pattern.compile("<br */?>", Pattern.CASE_INSENSITIVE);
@@ -59,27 +56,116 @@ public class TaxonboxWikiModel extends WikiModel {
   private static final String[] CITE_last_aliases = new String[]{"author","authors","last"};
 
   private static final PlainTextConverter converter = new PlainTextConverter();
+  private static final int VALUE_CACHE_SIZE = 10000;
+  private static final int MAX_CACHED_VALUE_LENGTH = 250;
+  private static final char SECTION_MARK = '\uE000';
+  private static final int UNKNOWNS_CAPACITY = 1000;
+  private static final int MAX_SAMPLE_LENGTH = 250;
+  private static final BeanSetters TAXON_SETTERS = BeanSetters.of(TaxonInfo.class);
+  private static final BeanSetters SOUND_SETTERS = BeanSetters.of(Sound.class);
+  private static final TemplateRegistry DEFAULT_TEMPLATES = new TemplateRegistry();
+  static {
+    for (String t : TAXOBOX_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> wiki.processTaxoBox(params));
+    }
+    // check taxonomy templates for auto boxes
+    DEFAULT_TEMPLATES.register("automatictaxobox", (wiki, params, writer) -> {
+      wiki.processTaxoBox(params);
+      AutomaticTaxonomyScraper.updateTaxonInfo(wiki.info);
+    });
+    DEFAULT_TEMPLATES.register("speciesbox", (wiki, params, writer) -> wiki.processSpeciesBox(Rank.Species, params));
+    DEFAULT_TEMPLATES.register("subspeciesbox", (wiki, params, writer) -> wiki.processSpeciesBox(Rank.Subspecies, params));
+    DEFAULT_TEMPLATES.register("infraspeciesbox", (wiki, params, writer) -> wiki.processSpeciesBox(Rank.Infraspecies, params));
+    // Sound templates
+    DEFAULT_TEMPLATES.register("listen", (wiki, params, writer) -> wiki.processSoundBox(params));
+    //
+    // append to writer
+    //
+    DEFAULT_TEMPLATES.register("hybrid", (wiki, params, writer) -> writer.append(" × "));
+    for (String t : FOSSIL_RANGE_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> wiki.processFossilRange(params, writer));
+    }
+    for (String t : CITATION_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> {
+        if (wiki.cfg.footnotes) {
+          wiki.processCitation(params, writer);
+        }
+      });
+    }
+    for (String t : PLAIN_LIST_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> {
+        if (params.containsKey("1")) {
+          writer.append(params.get("1").replaceAll("#", "*"));
+        }
+      });
+    }
+    for (String t : QUOTE_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> wiki.processQuote(params, writer));
+    }
+    DEFAULT_TEMPLATES.register("convert", (wiki, params, writer) -> wiki.processConvert(params, writer));
+    DEFAULT_TEMPLATES.register("taxonbar", (wiki, params, writer) -> wiki.processTaxonBar(params));
+    DEFAULT_TEMPLATES.register("dagger", (wiki, params, writer) -> writer.append("†"));
+    DEFAULT_TEMPLATES.register("collapsiblelist", (wiki, params, writer) -> wiki.processCollapsibleList(params, writer));
+    for (String t : SPECIES_LIST_TEMPLATES) {
+      DEFAULT_TEMPLATES.register(t, (wiki, params, writer) -> wiki.processSpeciesList(params, writer));
+    }
+  }
 
   private final WikipediaConfig cfg;
+  private final TemplateRegistry templates;
   private TaxonInfo info;
+  private final Map<String, TagToken> tokenMap = TaxonConfiguration.newTokenMap(this);
   private TaxonboxWikiModel internalWiki;
+  private TaxonboxWikiModel galleryWiki;
   private boolean multipleTaxa = false;
-  private Map<String, String> unknownProperties = Maps.newHashMap();
-  private Map<String, String> unknownTemplates = Maps.newHashMap();
-  @VisibleForTesting
-  protected Map<String, Integer> unknownTemplatesCounter = Maps.newHashMap();
+  private final ValueCache nameValues = new ValueCache(VALUE_CACHE_SIZE, MAX_CACHED_VALUE_LENGTH);
+  private final ValueCache rawValues = new ValueCache(VALUE_CACHE_SIZE, MAX_CACHED_VALUE_LENGTH);
+  private final NameCleaner nameCleaner = new NameCleaner();
+  // the model rendering the page, helper models for values and galleries share its render budget
+  private final TaxonboxWikiModel page;
+  // nanoTime after which the page being rendered is over budget, 0 for no limit
+  private long deadline;
+  private String budgetExceeded;
+  // level 2 headings of the article rendered by renderArticle, null otherwise
+  private List<String> headings;
+  private HeavyHitters unknownProperties = new HeavyHitters(UNKNOWNS_CAPACITY, MAX_SAMPLE_LENGTH);
+  private HeavyHitters unknownTemplates = new HeavyHitters(UNKNOWNS_CAPACITY, MAX_SAMPLE_LENGTH);
 
   public TaxonboxWikiModel(WikipediaConfig cfg) {
     super(TaxonConfiguration.DEFAULT_CONFIGURATION, "http://image.wikipedia.org/${image}", "http://"+cfg.lang+".wikipedia.org/${title}");
     this.cfg = cfg;
+    this.page = this;
+    templates = DEFAULT_TEMPLATES.copy();
     internalWiki = new TaxonboxWikiModel(this);
-    // update TaxonConfiguration with a reference to this wikimodel
-    TaxonConfiguration.setWikiModel(this);
   }
 
+  /**
+   * Creates a model with the config and all templates registered so far of the given model.
+   * The new model shares the render budget of the page rendered by the given model.
+   */
   public TaxonboxWikiModel(TaxonboxWikiModel wiki) {
     super(TaxonConfiguration.DEFAULT_CONFIGURATION, wiki.getImageBaseURL(), wiki.getWikiBaseURL());
     this.cfg = wiki.cfg;
+    this.page = wiki.page;
+    templates = wiki.templates.copy();
+  }
+
+  /**
+   * @return the tags of this model only, so models can be used concurrently
+   */
+  @Override
+  public Map<String, TagToken> getTokenMap() {
+    return tokenMap;
+  }
+
+  /**
+   * @return the model rendering the image titles of gallery tags found on pages of this model
+   */
+  public TaxonboxWikiModel getGalleryModel() {
+    if (galleryWiki == null) {
+      galleryWiki = new TaxonboxWikiModel(this);
+    }
+    return galleryWiki;
   }
 
   @Override
@@ -89,89 +175,28 @@ public class TaxonboxWikiModel extends WikiModel {
       // found magic word template
       return result;
     }
-    String name = encodeTitleToUrl(parsedPagename.pagename, true);
+    if (page.budgetExceeded != null) {
+      // skip all templates of pages over budget
+      return "";
+    }
     if (parsedPagename.namespace.isType(INamespace.NamespaceCode.TEMPLATE_NAMESPACE_KEY)) {
-
-      String templateName = name.toLowerCase().replaceAll("[ _-]","");
-      Appendable writer = new StringBuilder();
-
-      try {
-        //
-        // exceptional - we dont render the taxon boxes, but only extract the information !!!
-        //
-        if (TAXOBOX_TEMPLATES.contains(templateName)) {
-          processTaxoBox(templateParameters);
-          // check taxonomy templates for auto boxes
-          if (templateName.equalsIgnoreCase("automatictaxobox")) {
-            AutomaticTaxonomyScraper.updateTaxonInfo(info);
-          }
-
-        } else if (templateName.equalsIgnoreCase("speciesbox")){
-          processSpeciesBox(Rank.Species, templateParameters);
-
-        } else if (templateName.equalsIgnoreCase("subspeciesbox")){
-          processSpeciesBox(Rank.Subspecies, templateParameters);
-
-        } else if (templateName.equalsIgnoreCase("infraspeciesbox")){
-          processSpeciesBox(Rank.Infraspecies, templateParameters);
-
-          // Sound templates
-        } else if (templateName.equalsIgnoreCase("listen")){
-          processSoundBox(templateParameters);
-
-          //
-          // append to writer
-          //
-        } else if (templateName.equalsIgnoreCase("hybrid")){
-          return " × ";
-
-        } else if (FOSSIL_RANGE_TEMPLATES.contains(templateName)){
-          processFossilRange(templateParameters, writer);
-
-        } else if (CITATION_TEMPLATES.contains(templateName)) {
-          if (cfg.footnotes) {
-            processCitation(templateParameters, writer);
-          }
-
-        } else if (PLAIN_LIST_TEMPLATES.contains(templateName)) {
-          if (templateParameters.containsKey("1")) {
-            return templateParameters.get("1").replaceAll("#", "*");
-          }
-          return "";
-
-        } else if (QUOTE_TEMPLATES.contains(templateName)) {
-          processQuote(templateParameters, writer);
-
-        } else if (templateName.equalsIgnoreCase("convert")) {
-          processConvert(templateParameters, writer);
-
-        } else if (templateName.equalsIgnoreCase("taxonbar")) {
-          processTaxonBar(templateParameters);
-
-        } else if (templateName.equalsIgnoreCase("dagger")) {
-          return "†";
-
-        } else if (templateName.equalsIgnoreCase("collapsiblelist")) {
-          processCollapsibleList(templateParameters, writer);
-
-        } else if (SPECIES_LIST_TEMPLATES.contains(templateName)) {
-          processSpeciesList(templateParameters, writer);
-
-
-        } else{
-          // log all other templates found on known species pages!
-          if (info != null) {
-            if (!unknownTemplates.containsKey(templateName)){
-              unknownTemplates.put(templateName, templateParameters==null ? "" : templateParameters.toString());
-              unknownTemplatesCounter.put(templateName, 1);
-            } else {
-              unknownTemplatesCounter.put(templateName, unknownTemplatesCounter.get(templateName)+1);
-            }
-          }
-          // remove all other templates
-          return "";
+      //
+      // exceptional - we dont render the taxon boxes, but only extract the information !!!
+      //
+      TemplateHandler handler = templates.get(parsedPagename.pagename);
+      if (handler == null) {
+        // log all other templates found on known species pages!
+        if (info != null) {
+          unknownTemplates.add(TemplateRegistry.normalize(parsedPagename.pagename),
+              () -> templateParameters==null ? "" : templateParameters.toString());
         }
+        // remove all other templates
+        return "";
+      }
 
+      StringBuilder writer = new StringBuilder();
+      try {
+        handler.render(this, templateParameters, writer);
         return writer.toString();
 
       } catch (IOException e) {
@@ -181,6 +206,20 @@ public class TaxonboxWikiModel extends WikiModel {
     return null;
   }
 
+  /**
+   * Registers a handler for all calls of the given template, replacing any existing handler.
+   * Template names are matched case insensitive ignoring spaces, underscores and hyphens.
+   */
+  public void registerTemplate(String templateName, TemplateHandler handler) {
+    templates.register(templateName, handler);
+    if (internalWiki != null) {
+      internalWiki.registerTemplate(templateName, handler);
+    }
+    if (galleryWiki != null) {
+      galleryWiki.registerTemplate(templateName, handler);
+    }
+  }
+
   /**
    * TODO: Parses alternative ids by reading wikidata
    * taxonbar -> {from=Q161577}
@@ -200,6 +239,62 @@ public class TaxonboxWikiModel extends WikiModel {
     }
   }
 
+  /**
+   * Renders an entire article in a single bliki pass instead of section by section.
+   * Level 2 headings are replaced by a marker in the plain text and interlanguage links
+   * like [[de:Puma]] following the taxobox are added to its vernacular names.
+   *
+   * @return the raw title and plain text of all sections in page order, starting with the abstract without a title
+   */
+  public List<Map.Entry<String, String>> renderArticle(ITextConverter converter, String rawWikiText) throws IOException {
+    headings = Lists.newArrayList();
+    try {
+      String plain = render(converter, rawWikiText.replace(SECTION_MARK, ' '));
+      List<Map.Entry<String, String>> sections = Lists.newArrayList();
+      if (plain == null) {
+        return sections;
+      }
+      int start = 0;
+      for (int idx = 0; idx <= headings.size(); idx++) {
+        int end = idx < headings.size() ? plain.indexOf(SECTION_MARK, start) : -1;
+        if (end < 0) {
+          end = plain.length();
+        }
+        sections.add(Maps.immutableEntry(idx == 0 ? null : headings.get(idx - 1), plain.substring(start, end)));
+        start = Math.min(end + 1, plain.length());
+      }
+      return sections;
+
+    } finally {
+      headings = null;
+    }
+  }
+
+  @Override
+  public ITableOfContent appendHead(String rawHead, int headLevel, boolean noToC, int headCounter, int startPosition, int endPosition) {
+    if (headings == null || headLevel != 2) {
+      return super.appendHead(rawHead, headLevel, noToC, headCounter, startPosition, endPosition);
+    }
+    headings.add(rawHead);
+    append(new ContentToken(String.valueOf(SECTION_MARK)));
+    return getTableOfContent();
+  }
+
+  @Override
+  public boolean appendRawNamespaceLinks(String rawNamespaceTopic, String viewableLinkDescription, boolean containsNoPipe) {
+    if (headings != null) {
+      int colon = rawNamespaceTopic.indexOf(':');
+      if (colon >= 2 && colon <= 3 && StringUtils.isAllLowerCase(rawNamespaceTopic.substring(0, colon))) {
+        // interlanguage link
+        if (isSpeciesPage()) {
+          info.getVernacularNames().put(rawNamespaceTopic.substring(0, colon), rawNamespaceTopic.substring(colon + 1).trim());
+        }
+        return true;
+      }
+    }
+    return super.appendRawNamespaceLinks(rawNamespaceTopic, viewableLinkDescription, containsNoPipe);
+  }
+
   @Override
   public boolean pushNode(TagToken tag) {
     // call taxon process interface if needed
@@ -257,11 +352,8 @@ public class TaxonboxWikiModel extends WikiModel {
         // not all properties are names, but most are
         String value = cleanNameValue(parameterMap.get(param));
         try {
-          PropertyUtils.setProperty(sound, key, value);
-        } catch (IllegalAccessException e) {
-          LOG.error("IllegalAccessException Sound param={}", param);
-        } catch (NoSuchMethodException e) {
-          // expected - Sound bean doesnt cover all props
+          // Sound bean doesnt cover all props
+          SOUND_SETTERS.set(sound, key, value);
         } catch (IllegalArgumentException e) {
           // strange property names?
           LOG.warn("Illegal Sound property {} : {}", key, e.getMessage());
@@ -378,14 +470,9 @@ public class TaxonboxWikiModel extends WikiModel {
         // not all properties are names, but most are
         String value = cleanNameValue(parameterMap.get(param));
         try {
-          PropertyUtils.setProperty(info, key, value);
-        } catch (IllegalAccessException e) {
-          LOG.error("IllegalAccessException param={}", param);
-        } catch (NoSuchMethodException e) {
-          // expected - TaxonInfo bean doesnt cover all props
-          // only LOG unknown props once
-          if (!unknownProperties.containsKey(key)){
-            unknownProperties.put(key, parameterMap.get(param));
+          if (!TAXON_SETTERS.set(info, key, value)) {
+            // expected - TaxonInfo bean doesnt cover all props
+            unknownProperties.add(key, () -> parameterMap.get(param));
           }
         } catch (IllegalArgumentException e) {
           // strange property names?
@@ -591,6 +678,11 @@ public class TaxonboxWikiModel extends WikiModel {
 
   private String internalRender(String wikiText){
     if (wikiText!=null) {
+      // trivial values are converted without bliki
+      String plain = PlainWikiText.toPlainText(wikiText);
+      if (plain != null) {
+        return plain.trim();
+      }
       try {
         if (internalWiki != null) {
           return internalWiki.render(converter, wikiText);
@@ -609,23 +701,41 @@ public class TaxonboxWikiModel extends WikiModel {
     return REMOVE_TEMPLATES.matcher(x).replaceAll(" ");
   }
 
+  /**
+   * Values with templates or tags are rendered with the current page state, e.g. the taxon of a gallery tag,
+   * and never come from the cache. All other values, mostly plain text and links, render the same on every page.
+   */
+  private static boolean isCacheable(String val) {
+    return val.indexOf('{') < 0 && val.indexOf('<') < 0;
+  }
+
   private String cleanRawValue(String val){
     if (val==null) return null;
+    if (isCacheable(val)) {
+      return rawValues.get(val, this::renderRawValue);
+    }
+    return renderRawValue(val);
+  }
+
+  private String renderRawValue(String val){
     return Strings.emptyToNull(StringUtils.normalizeSpace(internalRender(val)));
   }
 
   private String cleanNameValue(String val){
     if (val==null) return null;
-    String cleaned = REPL_REF_TAG.matcher(val).replaceAll(" ");
+    String cleaned = nameCleaner.stripRefs(val);
 
-    Matcher m = IS_EXTINCT.matcher(cleaned);
-    info.extinctTmp = m.find();
+    // the extinct flag is page state and always taken from the raw value
+    info.extinctTmp = nameCleaner.isExtinct();
+
+    if (isCacheable(cleaned)) {
+      return nameValues.get(cleaned, this::renderNameValue);
+    }
+    return renderNameValue(cleaned);
+  }
 
-    cleaned = internalRender(cleaned);
-    cleaned = CLEAN_NAMES.matcher(cleaned).replaceAll(" ");
-    cleaned = REPL_BRACKET_REMARKS.matcher(cleaned).replaceAll(" ");
-    cleaned = REMOVE_QUESTION_MARK.matcher(cleaned).replaceAll(" ");
-    String name = Strings.emptyToNull(StringUtils.normalizeSpace(cleaned));
+  private String renderNameValue(String val){
+    String name = nameCleaner.clean(internalRender(val));
 
     if (name != null && name.equalsIgnoreCase("incertae sedis")) {
       return null;
@@ -634,9 +744,58 @@ public class TaxonboxWikiModel extends WikiModel {
     return name;
   }
 
+  /**
+   * Prepares the model for a new page, starting its render budget.
+   */
   public void reset() {
     info = null;
     multipleTaxa = false;
+    deadline = cfg.maxRenderMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cfg.maxRenderMillis) : 0;
+    budgetExceeded = null;
+  }
+
+  /**
+   * Checks the render time of the current page against its budget.
+   *
+   * @return the reason why the page budget is exceeded or null if it is not
+   */
+  public String checkBudget() {
+    if (page != this) {
+      return page.checkBudget();
+    }
+    if (budgetExceeded == null && deadline > 0 && System.nanoTime() > deadline) {
+      budgetExceeded = "render time over " + cfg.maxRenderMillis + "ms";
+    }
+    return budgetExceeded;
+  }
+
+  /**
+   * @return the reason why the page budget was exceeded or null if it was not
+   */
+  public String getBudgetExceeded() {
+    return page.budgetExceeded;
+  }
+
+  /**
+   * Marks the budget of the current page as exceeded, so no further templates get expanded.
+   */
+  public void exceedBudget(String reason) {
+    if (page.budgetExceeded == null) {
+      page.budgetExceeded = reason;
+    }
+  }
+
+  /**
+   * Called by bliki for every nested template expansion.
+   * Once the page budget is exceeded the bliki recursion limit is reported, so templates are no longer expanded.
+   */
+  @Override
+  public int incrementTemplateRecursionLevel() {
+    int level = super.incrementTemplateRecursionLevel();
+    if (cfg.maxTemplateDepth > 0 && level > cfg.maxTemplateDepth) {
+      exceedBudget("template depth over " + cfg.maxTemplateDepth);
+    }
+    return checkBudget() == null ? level : Configuration.TEMPLATE_RECURSION_LIMIT + 1;
   }
 
   public boolean isSpeciesPage() {
@@ -647,19 +806,40 @@ public class TaxonboxWikiModel extends WikiModel {
     return info;
   }
 
-  public Map<String, String> getUnknownProperties() {
-    return unknownProperties;
+  /**
+   * @return number of cleaned taxobox values taken from the cache
+   */
+  public long getValueCacheHits() {
+    return nameValues.getHits() + rawValues.getHits();
   }
 
-  public Map<String, String> getUnknownTemplates() {
-    return unknownTemplates;
+  /**
+   * @return number of cacheable taxobox values that had to be rendered
+   */
+  public long getValueCacheMisses() {
+    return nameValues.getMisses() + rawValues.getMisses();
+  }
+
+  /**
+   * Counts unknown templates and properties into the given structures instead of the models own ones,
+   * so several models can report together.
+   */
+  public void setUnknowns(HeavyHitters templates, HeavyHitters properties) {
+    this.unknownTemplates = templates;
+    this.unknownProperties = properties;
   }
 
-  public Map<String, Integer> getUnknownTemplatesCounter() {
-    return ImmutableSortedMap.copyOf(unknownTemplatesCounter,
-      Ordering.natural().reverse().nullsLast()
-        .onResultOf(Functions.forMap(unknownTemplatesCounter, null))
-        .compound(Ordering.natural())
-    );
+  /**
+   * @return the most frequent taxobox properties not covered by the taxon info, with a raw value as sample
+   */
+  public HeavyHitters getUnknownProperties() {
+    return unknownProperties;
+  }
+
+  /**
+   * @return the most frequent unknown templates on species pages by normalised name, with their parameters as sample
+   */
+  public HeavyHitters getUnknownTemplates() {
+    return unknownTemplates;
   }
 }
@@ -0,0 +1,213 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import org.tdwg.dwca.wikipedia.PropertiesStore;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in memory index of all english Template:Taxonomy pages read from the template namespace of a dump.
+ * Only the rank, parent, link and extinct parameters of every template are kept,
+ * the classification of a taxon is resolved by following the parent chain within the index.
+ * Lookups never touch the network, so automatic taxoboxes can be processed offline.
+ *
+ * The index is filled by passing template pages to it as an IArticleFilter and can be read concurrently.
+ */
+public class TaxonomyIndex implements IArticleFilter {
+  /**
+   * The template namespace holding the taxonomy pages
+   */
+  public static final int NAMESPACE = 10;
+  private static final String PREFIX = "Template:Taxonomy/";
+  // the english taxonomy tree is less than 50 levels deep, deeper chains are cycles
+  private static final int MAX_DEPTH = 100;
+  private final ConcurrentMap<String, Entry> templates = Maps.newConcurrentMap();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private static class Entry {
+    private String rank;
+    private String parent;
+    private String name;
+    private String extinct;
+    private String sameAs;
+  }
+
+  /**
+   * @return true if the page title is a taxonomy template
+   */
+  public static boolean isTaxonomyTemplate(String title) {
+    return title.startsWith(PREFIX) && title.length() > PREFIX.length();
+  }
+
+  @Override
+  public void process(WikiArticle page, Siteinfo siteinfo) {
+    if (page.getTitle() != null && isTaxonomyTemplate(page.getTitle()) && page.getText() != null) {
+      add(page.getTitle().substring(PREFIX.length()), page.getText());
+    }
+  }
+
+  /**
+   * Adds a single taxonomy template, replacing an existing one with the same name.
+   *
+   * @param template the template name without the Template:Taxonomy/ prefix
+   * @param wikitext the template source, usually a call to Don't edit this line with named parameters
+   */
+  public void add(String template, String wikitext) {
+    Entry e = new Entry();
+    String previous = null;
+    for (String param : parameters(wikitext)) {
+      int eq = param.indexOf('=');
+      if (eq < 0) {
+        // link=Target|Display
+        if ("link".equals(previous)) {
+          e.name = clean(param);
+        }
+        previous = null;
+        continue;
+      }
+      String key = param.substring(0, eq).trim().toLowerCase();
+      String value = Strings.emptyToNull(param.substring(eq + 1).trim());
+      previous = key;
+      if (value == null) {
+        continue;
+      }
+      switch (key) {
+        case "rank":
+          e.rank = value;
+          break;
+        case "parent":
+          e.parent = PropertiesStore.normalize(value);
+          break;
+        case "link":
+          e.name = clean(value);
+          break;
+        case "extinct":
+          e.extinct = value;
+          break;
+        case "same_as":
+          e.sameAs = PropertiesStore.normalize(value);
+          break;
+      }
+    }
+    String key = PropertiesStore.normalize(template);
+    if (e.name == null) {
+      // variants like Taxonomy/Aves/Plantae share the name before the slash
+      int slash = key.indexOf('/');
+      e.name = slash > 0 ? key.substring(0, slash) : key;
+    }
+    templates.put(key, e);
+  }
+
+  /**
+   * Splits the top level parameters of the first template call, ignoring pipes of nested templates and links.
+   */
+  private static List<String> parameters(String wikitext) {
+    List<String> params = Lists.newArrayList();
+    int start = wikitext.indexOf("{{");
+    if (start < 0) {
+      return params;
+    }
+    int depth = 0;
+    int links = 0;
+    int paramStart = -1;
+    for (int i = start; i < wikitext.length(); i++) {
+      char c = wikitext.charAt(i);
+      char next = i + 1 < wikitext.length() ? wikitext.charAt(i + 1) : 0;
+      if (c == '{' && next == '{') {
+        depth++;
+        i++;
+      } else if (c == '}' && next == '}') {
+        depth--;
+        i++;
+        if (depth == 0) {
+          if (paramStart >= 0) {
+            params.add(wikitext.substring(paramStart, i - 1));
+          }
+          break;
+        }
+      } else if (c == '[' && next == '[') {
+        links++;
+        i++;
+      } else if (c == ']' && next == ']') {
+        links = Math.max(0, links - 1);
+        i++;
+      } else if (c == '|' && depth == 1 && links == 0) {
+        if (paramStart >= 0) {
+          params.add(wikitext.substring(paramStart, i));
+        }
+        paramStart = i + 1;
+      }
+    }
+    return params;
+  }
+
+  private static String clean(String name) {
+    return Strings.emptyToNull(name.replace("''", "").replace("†", "").trim());
+  }
+
+  private String rank(Entry e) {
+    return e.rank == null && e.sameAs != null && templates.containsKey(e.sameAs) ? templates.get(e.sameAs).rank : e.rank;
+  }
+
+  private String parent(Entry e) {
+    return e.parent == null && e.sameAs != null && templates.containsKey(e.sameAs) ? templates.get(e.sameAs).parent : e.parent;
+  }
+
+  /**
+   * Resolves the rank, extinct flag and the entire classification of a taxonomy template.
+   *
+   * @param template the template name without the Template:Taxonomy/ prefix, e.g. a genus or scientific name
+   * @return the resolved taxonomy with higher taxa from the top down or null if there is no such template
+   */
+  AutomaticTaxonomyScraper.Taxonomy lookup(String template) {
+    Entry e = templates.get(PropertiesStore.normalize(template));
+    if (e == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    AutomaticTaxonomyScraper.Taxonomy tax = new AutomaticTaxonomyScraper.Taxonomy();
+    tax.rank = rank(e);
+    tax.extinct = e.extinct;
+    List<String[]> higherTaxa = Lists.newArrayList();
+    for (int depth = 0; e != null && depth < MAX_DEPTH; depth++) {
+      String rank = rank(e);
+      if (rank != null) {
+        higherTaxa.add(new String[]{rank, e.name});
+      }
+      String parent = parent(e);
+      e = parent == null ? null : templates.get(parent);
+    }
+    tax.higherTaxa.addAll(Lists.reverse(higherTaxa));
+    return tax;
+  }
+
+  /**
+   * @return number of indexed taxonomy templates
+   */
+  public int size() {
+    return templates.size();
+  }
+
+  /**
+   * @return number of lookups answered by the index
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups for templates not in the index
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,19 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Handles the calls of a wiki template, either rendering them into wiki text or extracting taxon information from them.
+ * Handlers are registered with a {@link TemplateRegistry} under one or more template names.
+ */
+@FunctionalInterface
+public interface TemplateHandler {
+
+  /**
+   * @param wiki the model rendering the current page
+   * @param params the template parameters
+   * @param writer receives the wiki text replacing the template call
+   */
+  void render(TaxonboxWikiModel wiki, Map<String, String> params, Appendable writer) throws IOException;
+}
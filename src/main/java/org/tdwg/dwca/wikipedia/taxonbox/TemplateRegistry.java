@@ -0,0 +1,144 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+/**
+ * Template handlers keyed by their normalised template name, i.e. the lower cased name without spaces, underscores and hyphens.
+ * Lookups normalise and hash the raw template name on the fly, so dispatching a template call does not allocate.
+ *
+ * Registries are not thread safe for concurrent registrations, lookups can be done concurrently once populated.
+ */
+public class TemplateRegistry {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static class Entry {
+    private final String name;
+    private final int hash;
+    private TemplateHandler handler;
+    private Entry next;
+
+    Entry(String name, int hash, TemplateHandler handler, Entry next) {
+      this.name = name;
+      this.hash = hash;
+      this.handler = handler;
+      this.next = next;
+    }
+  }
+
+  private Entry[] table = new Entry[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * @return a new registry with all handlers of this one
+   */
+  public TemplateRegistry copy() {
+    TemplateRegistry copy = new TemplateRegistry();
+    for (Entry e : table) {
+      for (; e != null; e = e.next) {
+        copy.register(e.name, e.handler);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Registers a handler for a template, replacing any existing handler of the same normalised name.
+   */
+  public void register(String templateName, TemplateHandler handler) {
+    String name = normalize(templateName);
+    int hash = hash(name);
+    Entry e = find(name, hash);
+    if (e != null) {
+      e.handler = handler;
+      return;
+    }
+    if (size >= table.length * 3 / 4) {
+      resize();
+    }
+    int idx = hash & (table.length - 1);
+    table[idx] = new Entry(name, hash, handler, table[idx]);
+    size++;
+  }
+
+  /**
+   * @param templateName the raw template name as found in the wiki text
+   * @return the handler registered for the normalised template name or null
+   */
+  public TemplateHandler get(CharSequence templateName) {
+    Entry e = find(templateName, hash(templateName));
+    return e == null ? null : e.handler;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the lower cased template name without spaces, underscores and hyphens
+   */
+  public static String normalize(CharSequence templateName) {
+    StringBuilder sb = new StringBuilder(templateName.length());
+    for (int i = 0; i < templateName.length(); i++) {
+      char c = templateName.charAt(i);
+      if (!isIgnored(c)) {
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean isIgnored(char c) {
+    return c == ' ' || c == '_' || c == '-';
+  }
+
+  /**
+   * String compatible hash of the normalised template name.
+   */
+  private static int hash(CharSequence templateName) {
+    int h = 0;
+    for (int i = 0; i < templateName.length(); i++) {
+      char c = templateName.charAt(i);
+      if (!isIgnored(c)) {
+        h = 31 * h + Character.toLowerCase(c);
+      }
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private Entry find(CharSequence templateName, int hash) {
+    for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.next) {
+      if (e.hash == hash && matches(e.name, templateName)) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return true if the raw template name normalises to the given normalised name
+   */
+  private static boolean matches(String name, CharSequence templateName) {
+    int idx = 0;
+    for (int i = 0; i < templateName.length(); i++) {
+      char c = templateName.charAt(i);
+      if (!isIgnored(c)) {
+        if (idx >= name.length() || name.charAt(idx++) != Character.toLowerCase(c)) {
+          return false;
+        }
+      }
+    }
+    return idx == name.length();
+  }
+
+  private void resize() {
+    Entry[] old = table;
+    table = new Entry[old.length * 2];
+    for (Entry e : old) {
+      while (e != null) {
+        Entry next = e.next;
+        int idx = e.hash & (table.length - 1);
+        e.next = table[idx];
+        table[idx] = e;
+        e = next;
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded least recently used cache of cleaned wiki text values with hit and miss counters.
+ * Values longer than the maximum value length are never cached.
+ * Null results are cached too. Not thread safe, every wiki model keeps its own caches.
+ */
+class ValueCache {
+  private final int maxValueLength;
+  private final Map<String, String> cache;
+  private long hits;
+  private long misses;
+
+  ValueCache(final int maxSize, int maxValueLength) {
+    this.maxValueLength = maxValueLength;
+    cache = new LinkedHashMap<String, String>(1024, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the cached result for the raw value or the result of the loader, which is then cached
+   */
+  String get(String raw, Function<String, String> loader) {
+    if (raw.length() > maxValueLength) {
+      misses++;
+      return loader.apply(raw);
+    }
+    String result = cache.get(raw);
+    if (result != null || cache.containsKey(raw)) {
+      hits++;
+      return result;
+    }
+    misses++;
+    result = loader.apply(raw);
+    cache.put(raw, result);
+    return result;
+  }
+
+  long getHits() {
+    return hits;
+  }
+
+  long getMisses() {
+    return misses;
+  }
+
+  int size() {
+    return cache.size();
+  }
+}
@@ -0,0 +1,46 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import info.bliki.wiki.dump.WikiXMLParser;
+import org.gbif.api.vocabulary.Language;
+import org.gbif.utils.file.FileUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArticlePipelineTest {
+
+  @Test
+  public void testPipeline() throws Exception {
+    WikipediaConfig cfg = new WikipediaConfig();
+    cfg.lang = Language.ENGLISH;
+    // tiny queues to exercise back pressure
+    cfg.workers = 3;
+    cfg.mediaWorkers = 2;
+    cfg.pageQueueSize = 1;
+    cfg.mediaQueueSize = 1;
+    cfg.writerQueueSize = 1;
+
+    final List<String> ids = Collections.synchronizedList(Lists.<String>newArrayList());
+    TaxonRecordWriter writer = new TaxonRecordWriter(null) {
+      @Override
+      public void write(TaxonRecord rec) {
+        ids.add(rec.getId());
+      }
+    };
+    ArticlePipeline pipeline = new ArticlePipeline(cfg, new WikimediaScraper(null), writer);
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      new WikiXMLParser(in, pipeline).parse();
+    }
+    pipeline.close();
+
+    assertEquals(3, pipeline.getHandlers().size());
+    // redirects, talk pages, templates and non species pages are skipped
+    Collections.sort(ids);
+    assertEquals(Lists.newArrayList("1001", "1010"), ids);
+  }
+}
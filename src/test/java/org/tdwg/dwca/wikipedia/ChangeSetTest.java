@@ -0,0 +1,67 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import org.gbif.api.vocabulary.Language;
+import org.gbif.utils.file.FileUtils;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.dump.PageReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeSetTest {
+
+  private void read(ChangeSet changes, InputStream in) throws IOException {
+    PageReader reader = new PageReader(in, changes);
+    reader.setSkipListener(changes.removals());
+    reader.parse();
+  }
+
+  private List<String> ids(ChangeSet changes) {
+    List<String> ids = Lists.newArrayList();
+    for (TaxonRecord rec : changes.getRecords()) {
+      ids.add(rec.getId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void testChanges() throws Exception {
+    WikipediaConfig cfg = new WikipediaConfig();
+    cfg.lang = Language.ENGLISH;
+    ChangeSet changes = new ChangeSet(new TaxonboxHandler(cfg, null, null));
+
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      read(changes, in);
+    }
+    assertEquals(10, changes.size());
+    assertEquals(Lists.newArrayList("1001", "1010"), ids(changes));
+    assertTrue(changes.isChanged("1001"));
+    assertTrue(changes.isChanged("1001-syn2"));
+    // redirects and other namespaces
+    assertTrue(changes.isChanged("1002"));
+    assertTrue(changes.isChanged("1003"));
+    assertFalse(changes.isChanged("999"));
+    assertFalse(changes.isChanged("999-syn1"));
+
+    // a later dump turns the first species page into a redirect
+    String xml = "<mediawiki><page><title>Abies alba</title><ns>0</ns><id>1001</id><redirect title=\"Silver fir\" />"
+        + "<revision><id>6001</id><text>#REDIRECT [[Silver fir]]</text></revision></page></mediawiki>";
+    read(changes, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(Lists.newArrayList("1010"), ids(changes));
+    assertTrue(changes.isChanged("1001"));
+
+    changes.delete("1010");
+    changes.delete("2000");
+    assertTrue(changes.getRecords().isEmpty());
+    assertTrue(changes.isChanged("2000"));
+    assertEquals(11, changes.size());
+  }
+}
@@ -0,0 +1,105 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import org.gbif.utils.file.FileUtils;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.dump.MultistreamIndex;
+import org.tdwg.dwca.wikipedia.dump.MultistreamInputStream;
+import org.tdwg.dwca.wikipedia.dump.MultistreamInputStreamTest;
+import org.tdwg.dwca.wikipedia.dump.PageReader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CheckpointerTest {
+
+  /**
+   * Sink recording page ids that fails on a given page to simulate a crash.
+   */
+  private static class RecordingSink implements ArticleSink {
+    private final List<String> ids;
+    private final String failOn;
+    private long counter = 0;
+
+    RecordingSink(List<String> ids, String failOn) {
+      this.ids = ids;
+      this.failOn = failOn;
+    }
+
+    @Override
+    public void process(WikiArticle page, Siteinfo siteinfo) {
+      if (page.getId().equals(failOn)) {
+        throw new IllegalStateException("Crash on page " + failOn);
+      }
+      ids.add(page.getId());
+      counter++;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public long getTaxonCounter() {
+      return counter;
+    }
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File tmp = FileUtils.createTempDir();
+    File dump = new File(tmp, "multistream.xml.bz2");
+    File indexFile = new File(tmp, "multistream-index.txt.bz2");
+    MultistreamInputStreamTest.writeMultistream(MultistreamInputStreamTest.sampleXml(), 1, dump, indexFile);
+    MultistreamIndex index = MultistreamIndex.read(indexFile);
+    File dir = new File(tmp, "checkpoint");
+    dir.mkdir();
+
+    // first run crashes on the last page
+    final List<String> ids = Lists.newArrayList();
+    Checkpointer cp = new Checkpointer(dir, 1, new Checkpoint(dump), w -> new RecordingSink(ids, "1010"), index);
+    try (InputStream in = MultistreamInputStream.open(dump, indexFile, 2)) {
+      new PageReader(in, cp).parse();
+      fail("Expected crash");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(Lists.newArrayList("1001", "1004"), ids);
+
+    Checkpoint checkpoint = Checkpoint.load(dir, dump);
+    assertEquals(1004, checkpoint.getLastPageId());
+    assertEquals(index.offsetOf(1004), checkpoint.getOffset());
+    assertEquals(2, checkpoint.getPages());
+    assertEquals(2, checkpoint.getSegments());
+    // the incomplete third segment was left behind
+    assertTrue(new File(dir, "segment-00002").exists());
+
+    // resume from the stream holding the last checkpointed page
+    final List<String> resumed = Lists.newArrayList();
+    cp = new Checkpointer(dir, 1, checkpoint, w -> new RecordingSink(resumed, null), index);
+    try (InputStream in = new MultistreamInputStream(dump, index.blocksFrom(dump.length(), checkpoint.getLastPageId()), 2)) {
+      new PageReader(in, cp).parse();
+    }
+    cp.close();
+    assertEquals(Lists.newArrayList("1010"), resumed);
+    assertEquals(3, cp.getCheckpoint().getSegments());
+    assertEquals(3, cp.getCheckpoint().getTaxa());
+    assertEquals(3, cp.getSegments().size());
+    assertEquals(new File(dir, "segment-00002"), cp.getSegments().get(2));
+
+    // a checkpoint for a different dump is ignored
+    File other = new File(tmp, "other.xml.bz2");
+    assertTrue(other.createNewFile());
+    assertNull(Checkpoint.load(dir, other));
+
+    org.apache.commons.io.FileUtils.deleteDirectory(tmp);
+  }
+}
@@ -0,0 +1,238 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.gbif.utils.HttpUtil;
+import org.gbif.utils.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests against a local stand-in for the commons api that answers every query with a recorded response.
+ */
+public class CommonsMetadataClientTest {
+  private static final List<String> FILES = Lists.newArrayList("Puma_Sleeping.jpg", "Tritylodon_BW.jpg",
+      "Eichh%C3%B6rnchen_D%C3%BCsseldorf_Hofgarten.jpg", "No_such_file.jpg");
+  // the first part of a response to be continued, the imageinfo of the second file is missing
+  private static final String PARTIAL = "<?xml version=\"1.0\"?><api>"
+      + "<continue iicontinue=\"2506013|20080424\" continue=\"||\" />"
+      + "<query><normalized>"
+      + "<n from=\"File:Puma_Sleeping.jpg\" to=\"File:Puma Sleeping.jpg\" />"
+      + "<n from=\"File:Tritylodon_BW.jpg\" to=\"File:Tritylodon BW.jpg\" />"
+      + "</normalized><pages>"
+      + "<page pageid=\"1869245\" ns=\"6\" title=\"File:Puma Sleeping.jpg\" imagerepository=\"local\">"
+      + "<imageinfo><ii><extmetadata><Artist value=\"Trisha M Shears\" source=\"commons-desc-page\" /></extmetadata></ii></imageinfo>"
+      + "</page>"
+      + "<page pageid=\"2506013\" ns=\"6\" title=\"File:Tritylodon BW.jpg\" imagerepository=\"local\" />"
+      + "</pages></query></api>";
+  private final List<String> continued = Collections.synchronizedList(Lists.<String>newArrayList());
+  private final List<List<String>> requests = Collections.synchronizedList(Lists.<List<String>>newArrayList());
+  private byte[] response;
+  private HttpServer server;
+
+  @Before
+  public void start() throws Exception {
+    try (InputStream in = FileUtils.classpathStream("commons-extmetadata.xml")) {
+      response = IOUtils.toByteArray(in);
+    }
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/w/api.php", this::serveQuery);
+    server.createContext("/partial/api.php", this::servePartial);
+    server.start();
+  }
+
+  private void serveQuery(HttpExchange exchange) throws IOException {
+    for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+      if (param.startsWith("titles=")) {
+        requests.add(Lists.newArrayList(URLDecoder.decode(param.substring(7), "UTF-8").split("\\|")));
+      }
+    }
+    exchange.sendResponseHeaders(200, response.length);
+    exchange.getResponseBody().write(response);
+    exchange.close();
+  }
+
+  private void servePartial(HttpExchange exchange) throws IOException {
+    String query = exchange.getRequestURI().getRawQuery();
+    continued.add(query);
+    byte[] body = query.contains("iicontinue=") ? response : PARTIAL.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  @After
+  public void stop() {
+    server.stop(0);
+  }
+
+  private String api() {
+    return "http://localhost:" + server.getAddress().getPort() + "/w/api.php";
+  }
+
+  private WikimediaScraper scraper() {
+    return new WikimediaScraper(HttpUtil.newMultithreadedClient(10000, 5, 5)).withApi(api());
+  }
+
+  @Test
+  public void testLookup() throws Exception {
+    CommonsMetadataClient client = new CommonsMetadataClient(HttpUtil.newSinglethreadedClient(10000), api());
+    List<String> files = Lists.newArrayList(FILES);
+    files.add("Not_in_response.jpg");
+    Map<String, Optional<Map<String, String>>> found = client.lookup(files);
+
+    assertEquals(1, client.getRequests());
+    assertEquals(5, requests.get(0).size());
+    assertTrue(requests.get(0).contains("File:Eichhörnchen_Düsseldorf_Hofgarten.jpg"));
+
+    assertEquals(4, found.size());
+    Map<String, String> puma = found.get("Puma_Sleeping.jpg").get();
+    assertEquals("Ltshears - Trisha M Shears", puma.get("Artist"));
+    assertEquals("Public domain", puma.get("LicenseShortName"));
+    assertEquals("Own work", puma.get("Credit"));
+    assertFalse(found.get("No_such_file.jpg").isPresent());
+    assertNull(found.get("Not_in_response.jpg"));
+  }
+
+  @Test
+  public void testContinue() throws Exception {
+    String api = "http://localhost:" + server.getAddress().getPort() + "/partial/api.php";
+    CommonsMetadataClient client = new CommonsMetadataClient(HttpUtil.newSinglethreadedClient(10000), api);
+    Map<String, Optional<Map<String, String>>> found = client.lookup(Lists.newArrayList("Puma_Sleeping.jpg", "Tritylodon_BW.jpg"));
+
+    assertEquals(2, client.getRequests());
+    assertTrue(continued.get(1).contains("iicontinue=2506013%7C20080424"));
+    assertTrue(continued.get(1).contains("continue=%7C%7C"));
+    assertEquals(2, found.size());
+    // the first answer wins
+    assertEquals("Trisha M Shears", found.get("Puma_Sleeping.jpg").get().get("Artist"));
+    assertEquals("GFDL", found.get("Tritylodon_BW.jpg").get().get("LicenseShortName"));
+  }
+
+  @Test
+  public void testIncompleteResponse() throws Exception {
+    // the same partial answer without a continuation
+    response = PARTIAL.replaceFirst("<continue [^>]+>", "").getBytes(StandardCharsets.UTF_8);
+    CommonsMetadataClient client = new CommonsMetadataClient(HttpUtil.newSinglethreadedClient(10000), api());
+    Map<String, Optional<Map<String, String>>> found = client.lookup(Lists.newArrayList("Puma_Sleeping.jpg", "Tritylodon_BW.jpg"));
+    assertEquals(1, client.getRequests());
+    assertTrue(found.get("Puma_Sleeping.jpg").isPresent());
+    // files without metadata are left out, so they are not cached as having none
+    assertNull(found.get("Tritylodon_BW.jpg"));
+  }
+
+  @Test
+  public void testScrape() throws Exception {
+    List<Image> media = Lists.newArrayList();
+    for (String f : FILES) {
+      Image img = new Image();
+      img.setUrl(f);
+      media.add(img);
+    }
+    WikimediaScraper scraper = scraper();
+    scraper.scrape(media);
+    assertEquals(1, requests.size());
+
+    Media puma = media.get(0);
+    assertEquals("Own work", puma.getSource());
+    assertEquals("1 March 2007", puma.getDate());
+    assertEquals("Ltshears - Trisha M Shears", puma.getAuthor());
+    assertEquals("Public Domain", puma.getLicense());
+    assertEquals("Wikimedia Commons", puma.getPublisher());
+
+    Media tritylodon = media.get(1);
+    assertEquals("Nobu Tamura (http://spinops.blogspot.com)", tritylodon.getAuthor());
+    assertEquals("GNU Free Documentation License", tritylodon.getLicense());
+    assertEquals("Tritylodon longaevus, a cynodont from the Early Jurassic of South Africa, pencil drawing", tritylodon.getDescription());
+
+    assertEquals("Creative Commons Attribution Share Alike 2.0 Germany", media.get(2).getLicense());
+
+    Media missing = media.get(3);
+    assertNull(missing.getLicense());
+    assertEquals("Wikimedia Commons", missing.getPublisher());
+
+    // found media are cached
+    Image again = new Image();
+    again.setUrl("Tritylodon_BW.jpg");
+    scraper.scrape(again);
+    assertEquals(1, requests.size());
+    assertEquals("GNU Free Documentation License", again.getLicense());
+
+    // so are missing media, also without a persistent store
+    Image missingAgain = new Image();
+    missingAgain.setUrl("No_such_file.jpg");
+    scraper.scrape(missingAgain);
+    assertEquals(1, requests.size());
+    assertEquals("Wikimedia Commons", missingAgain.getPublisher());
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    List<Image> media = Lists.newArrayList();
+    for (int idx = 0; idx < 120; idx++) {
+      Image img = new Image();
+      // every file twice
+      img.setUrl("Taxon_" + idx / 2 + ".jpg");
+      media.add(img);
+    }
+    scraper().scrape(media);
+    assertEquals(2, requests.size());
+    assertEquals(50, requests.get(0).size());
+    assertEquals(10, requests.get(1).size());
+  }
+
+  @Test
+  public void testEnricherBatches() throws Exception {
+    List<TaxonRecord> records = Lists.newArrayList();
+    for (int idx = 0; idx < 50; idx++) {
+      Image img = new Image();
+      img.setUrl("Taxon_" + idx + ".jpg");
+      TaxonRecord.Builder rec = TaxonRecord.builder(String.valueOf(idx)).media(img);
+      if (idx < 2 * FILES.size()) {
+        // every recorded file for 2 records, shared while their batch is still being collected
+        Image img2 = new Image();
+        img2.setUrl(FILES.get(idx % FILES.size()));
+        rec.media(img2);
+      }
+      records.add(rec.build());
+    }
+    try (MediaEnricher enricher = new MediaEnricher(scraper(), 2, 100)) {
+      for (TaxonRecord rec : records) {
+        enricher.enrich(rec);
+      }
+    }
+    // lookups of all records are collected into batches, lookups for files already in a batch are shared
+    int requested = 0;
+    for (List<String> titles : requests) {
+      assertTrue(titles.size() <= CommonsMetadataClient.BATCH_SIZE);
+      requested += titles.size();
+    }
+    assertEquals(2, requests.size());
+    assertEquals(54, requested);
+    for (TaxonRecord rec : records.subList(0, 2 * FILES.size())) {
+      assertEquals("Wikimedia Commons", rec.getMedia().get(1).getPublisher());
+    }
+    assertEquals("Public Domain", records.get(0).getMedia().get(1).getLicense());
+    assertEquals("Public Domain", records.get(4).getMedia().get(1).getLicense());
+  }
+}
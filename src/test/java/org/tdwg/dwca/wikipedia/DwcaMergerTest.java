@@ -0,0 +1,65 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.gbif.dwc.Archive;
+import org.gbif.dwc.DwcFiles;
+import org.gbif.dwc.DwcaWriter;
+import org.gbif.dwc.record.StarRecord;
+import org.gbif.dwc.terms.DcTerm;
+import org.gbif.dwc.terms.DwcTerm;
+import org.gbif.dwc.terms.GbifTerm;
+import org.gbif.dwc.terms.Term;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DwcaMergerTest {
+
+  private File shard(String... ids) throws Exception {
+    File dir = org.gbif.utils.file.FileUtils.createTempDir();
+    DwcaWriter writer = new DwcaWriter(DwcTerm.Taxon, dir);
+    for (String id : ids) {
+      writer.newRecord(id);
+      writer.addCoreColumn(DwcTerm.scientificName, "Abies " + id);
+      Map<Term, String> row = Maps.newHashMap();
+      row.put(DwcTerm.vernacularName, "Fir " + id);
+      row.put(DcTerm.language, "en");
+      writer.addExtensionRecord(GbifTerm.VernacularName, row);
+    }
+    writer.close();
+    return dir;
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    File s1 = shard("1", "2");
+    File s2 = shard("3", "2", "4");
+    File target = org.gbif.utils.file.FileUtils.createTempDir();
+
+    DwcaWriter writer = new DwcaWriter(DwcTerm.Taxon, target);
+    DwcaMerger merger = new DwcaMerger(writer);
+    assertEquals(2, merger.append(s1));
+    assertEquals(2, merger.append(s2));
+    assertEquals(1, merger.getDuplicates());
+    writer.close();
+
+    Archive arch = DwcFiles.fromLocation(target.toPath());
+    int cores = 0;
+    int vernaculars = 0;
+    for (StarRecord rec : arch) {
+      cores++;
+      assertEquals("Abies " + rec.core().id(), rec.core().value(DwcTerm.scientificName));
+      vernaculars += rec.extension(GbifTerm.VernacularName).size();
+    }
+    assertEquals(4, cores);
+    assertEquals(4, vernaculars);
+
+    FileUtils.deleteDirectory(s1);
+    FileUtils.deleteDirectory(s2);
+    FileUtils.deleteDirectory(target);
+  }
+}
@@ -0,0 +1,155 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.gbif.utils.HttpUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
+import org.tdwg.dwca.wikipedia.taxonbox.Media;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests against a local stub of wikimedia commons answering every file page with a delay.
+ */
+public class MediaEnricherTest {
+  private static final int DELAY = 100;
+  private static final String PAGE = "<html><body><div id=\"mw-imagepage-content\"><table>"
+      + "<tr><td>Author</td><td>%s</td></tr>"
+      + "<tr><td>Source</td><td>Own work</td></tr>"
+      + "</table></div><div id=\"mw-hidden-catlinks\"><a>PD-self</a></div></body></html>";
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private ExecutorService serverThreads;
+  private HttpServer server;
+
+  @Before
+  public void start() throws Exception {
+    serverThreads = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/wiki/", this::serveFile);
+    server.setExecutor(serverThreads);
+    server.start();
+  }
+
+  private void serveFile(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    try {
+      Thread.sleep(DELAY);
+      String file = exchange.getRequestURI().getPath().substring("/wiki/File:".length());
+      byte[] body = String.format(PAGE, file).getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      running.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  @After
+  public void stop() {
+    server.stop(0);
+    serverThreads.shutdownNow();
+  }
+
+  private WikimediaScraper scraper() {
+    return new WikimediaScraper(HttpUtil.newMultithreadedClient(10000, 20, 20))
+        .withCommons("http://localhost:" + server.getAddress().getPort() + "/wiki/");
+  }
+
+  private static List<TaxonRecord> records(int number, int mediaPerRecord) {
+    List<TaxonRecord> records = Lists.newArrayList();
+    for (int idx = 0; idx < number; idx++) {
+      TaxonRecord.Builder rec = TaxonRecord.builder(String.valueOf(idx));
+      for (int m = 0; m < mediaPerRecord; m++) {
+        Image img = new Image();
+        img.setUrl("Taxon_" + idx + "_" + m + ".jpg");
+        rec.media(img);
+      }
+      records.add(rec.build());
+    }
+    return records;
+  }
+
+  /**
+   * @return milliseconds needed to enrich all records
+   */
+  private long enrich(List<TaxonRecord> records, int concurrency) throws Exception {
+    long start = System.currentTimeMillis();
+    List<CompletableFuture<TaxonRecord>> enriched = Lists.newArrayList();
+    try (MediaEnricher enricher = new MediaEnricher(scraper(), concurrency, 4)) {
+      for (TaxonRecord rec : records) {
+        enriched.add(enricher.enrich(rec));
+      }
+    }
+    for (int idx = 0; idx < records.size(); idx++) {
+      assertTrue(enriched.get(idx).isDone());
+      assertEquals(records.get(idx), enriched.get(idx).join());
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  @Test
+  public void testScaling() throws Exception {
+    List<TaxonRecord> records = records(8, 2);
+    long sequential = enrich(records, 1);
+    assertEquals(16, requests.get());
+    assertEquals(1, maxRunning.get());
+    assertTrue(sequential >= 16 * DELAY);
+
+    records = records(8, 2);
+    requests.set(0);
+    maxRunning.set(0);
+    long concurrent = enrich(records, 8);
+    assertEquals(16, requests.get());
+    // lookups overlap, but how many at the same time depends on the load of the machine
+    assertTrue("At most " + maxRunning.get() + " concurrent lookups", maxRunning.get() > 1);
+    assertTrue(maxRunning.get() <= 8);
+    // 2 rounds of 8 concurrent requests
+    assertTrue("Concurrent lookups took " + concurrent + "ms, sequential " + sequential + "ms", concurrent * 3 < sequential);
+
+    for (TaxonRecord rec : records) {
+      for (Media m : rec.getMedia()) {
+        assertEquals(m.getUrl(), m.getAuthor());
+        assertEquals("Own work", m.getSource());
+        assertEquals("Public Domain", m.getLicense());
+        assertEquals("Wikimedia Commons", m.getPublisher());
+      }
+    }
+  }
+
+  @Test
+  public void testSharedLookups() throws Exception {
+    List<TaxonRecord> records = Lists.newArrayList();
+    for (int idx = 0; idx < 6; idx++) {
+      Image img = new Image();
+      img.setUrl("Puma_concolor.jpg");
+      records.add(TaxonRecord.builder(String.valueOf(idx)).media(img).build());
+    }
+    enrich(records, 4);
+    // the same file is requested only once, all other lookups wait for it or hit the cache
+    assertEquals(1, requests.get());
+    for (TaxonRecord rec : records) {
+      Media m = rec.getMedia().get(0);
+      assertEquals("Puma_concolor.jpg", m.getAuthor());
+      assertEquals("Public Domain", m.getLicense());
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.tdwg.dwca.wikipedia;
+
+import org.gbif.utils.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.taxonbox.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MediaStoreTest {
+  private File dir;
+
+  @Before
+  public void init() throws IOException {
+    dir = FileUtils.createTempDir();
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+
+  private static Image image(String url) {
+    Image img = new Image();
+    img.setUrl(url);
+    return img;
+  }
+
+  @Test
+  public void testNormalize() {
+    assertEquals("Puma concolor.jpg", MediaStore.normalize("puma_concolor.jpg"));
+    assertEquals("Puma concolor.jpg", MediaStore.normalize(" Puma  _concolor.jpg "));
+  }
+
+  @Test
+  public void testStore() {
+    MediaStore store = new MediaStore(dir, 30);
+    assertEquals(MediaStore.Status.UNKNOWN, store.get("Puma.jpg").getStatus());
+    assertNull(store.get("Puma.jpg").getMetadata());
+
+    Image img = image("Puma.jpg");
+    img.setAuthor("Tom");
+    img.setLicense("Creative Commons Attribution 2.0");
+    img.setDescription("A cougar\nin snow");
+    store.put("Puma.jpg", img);
+
+    MediaStore.Entry stored = store.get("puma.jpg");
+    assertEquals(MediaStore.Status.FOUND, stored.getStatus());
+    assertEquals("Tom", stored.getMetadata().getAuthor());
+    assertEquals("Creative Commons Attribution 2.0", stored.getMetadata().getLicense());
+    assertEquals("A cougar\nin snow", stored.getMetadata().getDescription());
+    assertNull(stored.getMetadata().getSource());
+
+    store.putMissing("Deleted file.jpg");
+    assertEquals(MediaStore.Status.MISSING, store.get("Deleted_file.jpg").getStatus());
+    assertEquals(2, store.getHits());
+    assertEquals(2, store.getMisses());
+
+    // a new store reads the entries of previous runs
+    assertEquals(MediaStore.Status.FOUND, new MediaStore(dir, 30).get("Puma.jpg").getStatus());
+  }
+
+  @Test
+  public void testExpiry() {
+    MediaStore store = new MediaStore(dir, 1);
+    store.putMissing("Old.jpg");
+    for (File shard : dir.listFiles()) {
+      for (File f : shard.listFiles()) {
+        f.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+      }
+    }
+    assertEquals(MediaStore.Status.UNKNOWN, store.get("Old.jpg").getStatus());
+  }
+
+  /**
+   * A scraper with a filled store must not request commons at all, it has no http client.
+   */
+  @Test
+  public void testScraper() {
+    MediaStore store = new MediaStore(dir, 30);
+    Image stored = image("Puma.jpg");
+    stored.setAuthor("Tom");
+    stored.setPublisher("Wikimedia Commons");
+    store.put("Puma.jpg", stored);
+    store.putMissing("Deleted.jpg");
+
+    WikimediaScraper scraper = new WikimediaScraper(null).withStore(store);
+    Image img = image("Puma.jpg");
+    scraper.scrape(img);
+    assertEquals("Tom", img.getAuthor());
+    assertEquals("Wikimedia Commons", img.getPublisher());
+
+    Image missing = image("Deleted.jpg");
+    scraper.scrape(missing);
+    assertNull(missing.getAuthor());
+    assertEquals("Wikimedia Commons", missing.getPublisher());
+
+    // the second lookup of the same file is answered from memory, also for missing files
+    scraper.scrape(image("Puma.jpg"));
+    scraper.scrape(image("Deleted.jpg"));
+    assertEquals(2, store.getHits());
+  }
+}
@@ -0,0 +1,69 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.google.common.io.Resources;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SectionIndexTest {
+  // the regular expression formerly used to split pages
+  private static final Pattern SPLIT_SECTIONS = Pattern.compile("(?<!=)==([^=]+)==");
+  private static final String[] PAGES = new String[]{"agathis.txt", "puma-en.txt", "pumaconcolor-en.txt", "red_wolf.txt",
+      "fabaceae.txt", "olivenbaum.txt", "scaevola_taccada.txt"};
+
+  @Test
+  public void testSections() {
+    SectionIndex idx = new SectionIndex("Intro\n==Description==\nTall.\n===Leaves===\nGreen.\n== Range ==\nAsia");
+    assertEquals(3, idx.size());
+    assertNull(idx.title(0));
+    assertEquals("Intro\n", idx.body(0).toString());
+    assertEquals("Description", idx.title(1));
+    assertEquals("\nTall.\n===Leaves===\nGreen.\n", idx.body(1).toString());
+    assertEquals(" Range ", idx.title(2));
+    assertEquals("\nAsia", idx.body(2).toString());
+
+    assertEquals(1, new SectionIndex("").size());
+    assertEquals(1, new SectionIndex("a == b").size());
+  }
+
+  /**
+   * Compares the index with the former regular expression for the test pages and random texts.
+   */
+  @Test
+  public void testSameAsRegex() throws Exception {
+    for (String res : PAGES) {
+      assertSame(Resources.toString(Resources.getResource(res), StandardCharsets.UTF_8));
+    }
+    Random rnd = new Random(7);
+    String[] fragments = new String[]{"=", "==", "===", "a", " ", "\n", "Range"};
+    for (int i = 0; i < 100000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int len = rnd.nextInt(15);
+      for (int j = 0; j < len; j++) {
+        sb.append(fragments[rnd.nextInt(fragments.length)]);
+      }
+      assertSame(sb.toString());
+    }
+  }
+
+  private static void assertSame(String text) {
+    SectionIndex idx = new SectionIndex(text);
+    Matcher m = SPLIT_SECTIONS.matcher(text);
+    int section = 0;
+    int lastIndex = 0;
+    while (m.find()) {
+      assertEquals(text, text.substring(lastIndex, m.start()), idx.body(section).toString());
+      section++;
+      assertEquals(text, m.group(1), idx.title(section));
+      lastIndex = m.end();
+    }
+    assertEquals(text, text.substring(lastIndex), idx.body(section).toString());
+    assertEquals(text, section + 1, idx.size());
+  }
+}
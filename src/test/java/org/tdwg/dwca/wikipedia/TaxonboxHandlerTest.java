@@ -4,6 +4,7 @@ import info.bliki.wiki.dump.WikiArticle;
 import org.gbif.api.vocabulary.Language;
 import org.gbif.dwc.DwcaWriter;
 import org.gbif.dwc.terms.DwcTerm;
+import org.gbif.dwc.terms.GbifTerm;
 import org.gbif.utils.file.FileUtils;
 import org.gbif.utils.file.InputStreamUtils;
 import org.junit.Ignore;
@@ -36,11 +37,15 @@ public class TaxonboxHandlerTest {
   }
 
   private TaxonboxHandler getHandler(Language lang) throws IOException, SAXException {
+    WikipediaConfig cfg = new WikipediaConfig();
+    cfg.lang = lang;
+    return getHandler(cfg);
+  }
+
+  private TaxonboxHandler getHandler(WikipediaConfig cfg) throws IOException, SAXException {
     File tmpDir = FileUtils.createTempDir();
     tmpDir.deleteOnExit();
     DwcaWriter writer = new DwcaWriter(DwcTerm.Taxon, tmpDir);
-    WikipediaConfig cfg = new WikipediaConfig();
-    cfg.lang = lang;
     return new TaxonboxHandler(cfg, null, writer, null);
   }
 
@@ -249,4 +254,71 @@ public class TaxonboxHandlerTest {
   }
 
 
+
+  @Test
+  public void testRenderBudget() throws Exception {
+    WikipediaConfig cfg = new WikipediaConfig();
+    cfg.lang = Language.ENGLISH;
+    WikiArticle page = article("Agathis microstachya", "agathis.txt");
+    page.setId("1");
+    TaxonRecord full = getHandler(cfg).parse(page);
+    int sections = full.getExtensions().get(GbifTerm.Description).size();
+    assertEquals(5, sections);
+
+    // the taxobox is kept, but sections beyond the text budget are cut
+    cfg.maxPageText = 100;
+    TaxonboxHandler th = getHandler(cfg);
+    TaxonRecord cut = th.parse(page);
+    assertEquals("Agathis microstachya", cut.getCore().get(DwcTerm.scientificName));
+    assertTrue(cut.getExtensions().get(GbifTerm.Description).size() < sections);
+    assertEquals(1, th.getCutPages().size());
+    assertTrue(th.getCutPages().get(0).startsWith("Agathis microstachya\tpage text over 100"));
+
+    // pages within budget are not reported
+    cfg.maxPageText = 0;
+    th = getHandler(cfg);
+    assertEquals(sections, th.parse(page).getExtensions().get(GbifTerm.Description).size());
+    assertTrue(th.getCutPages().isEmpty());
+  }
+
+  @Test
+  public void testTemplateDepth() throws Exception {
+    WikipediaConfig cfg = new WikipediaConfig();
+    cfg.lang = Language.ENGLISH;
+    cfg.maxTemplateDepth = 5;
+    TaxonboxHandler th = getHandler(cfg);
+    WikiArticle page = article("Agathis microstachya", "agathis.txt");
+    StringBuilder nested = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      nested.append("{{Nested|");
+    }
+    for (int i = 0; i < 20; i++) {
+      nested.append("}}");
+    }
+    page.setText(page.getText().replace("==Description==", "==Description==\n" + nested));
+    assertNotNull(th.parse(page));
+    assertEquals(1, th.getCutPages().size());
+    assertTrue(th.getCutPages().get(0).endsWith("template depth over 5"));
+  }
+
+  /**
+   * Rendering pages in a single pass must extract the same sections, images and vernacular names.
+   */
+  @Test
+  public void testSingleParse() throws Exception {
+    for (String res : new String[]{"agathis.txt", "fabaceae.txt", "scaevola_taccada.txt", "red_wolf.txt"}) {
+      WikipediaConfig cfg = new WikipediaConfig();
+      cfg.lang = Language.ENGLISH;
+      TaxonboxHandler sectional = getHandler(cfg);
+      LinkedHashMap<String, String> expected = sectional.splitPage(article(res, res));
+
+      cfg.singleParse = true;
+      TaxonboxHandler single = getHandler(cfg);
+      assertEquals(res, expected, single.splitPage(article(res, res)));
+      TaxonInfo taxon = single.getWikiModel().getTaxonInfo();
+      assertEquals(res, sectional.getWikiModel().getTaxonInfo().getScientificName(), taxon.getScientificName());
+      assertEquals(res, sectional.getWikiModel().getTaxonInfo().getImages().size(), taxon.getImages().size());
+      assertEquals(res, sectional.getWikiModel().getTaxonInfo().getVernacularNames(), taxon.getVernacularNames());
+    }
+  }
 }
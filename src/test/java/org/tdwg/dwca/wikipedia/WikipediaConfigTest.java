@@ -0,0 +1,35 @@
+package org.tdwg.dwca.wikipedia;
+
+import com.beust.jcommander.JCommander;
+import com.google.common.collect.Lists;
+import org.gbif.api.vocabulary.Language;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WikipediaConfigTest {
+
+  @Test
+  public void testLanguages() throws Exception {
+    WikipediaConfig cfg = new WikipediaConfig();
+    new JCommander(cfg, "--lang", "en,de,es,fr", "-r", "/tmp/wiki", "-w", "8");
+    assertEquals(Lists.newArrayList(Language.ENGLISH, Language.GERMAN, Language.SPANISH, Language.FRENCH), cfg.langs);
+    assertNull(cfg.lang);
+
+    WikipediaConfig de = cfg.forLanguage(Language.GERMAN);
+    assertEquals(Language.GERMAN, de.lang);
+    assertEquals(Lists.newArrayList(Language.GERMAN), de.langs);
+    assertEquals(new File("/tmp/wiki"), de.repo);
+    assertEquals(8, de.workers);
+    assertEquals(new File("/tmp/wiki/wikipedia-de-dwca.zip"), de.getDwcaFile());
+    assertTrue(de.getWikipediaDumpUrl().toString().contains("/dewiki/"));
+
+    // the original stays untouched
+    assertNull(cfg.lang);
+    assertEquals(4, cfg.langs.size());
+  }
+}
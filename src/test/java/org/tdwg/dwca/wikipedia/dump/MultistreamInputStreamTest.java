@@ -0,0 +1,158 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.collect.Lists;
+import info.bliki.wiki.dump.WikiXMLParser;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.gbif.utils.file.FileUtils;
+import org.gbif.utils.file.InputStreamUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultistreamInputStreamTest {
+  public static final String SAMPLE_DUMP = "enwiki-sample.xml";
+  private static final Pattern PAGE_ID = Pattern.compile("<page>\\s*<title>([^<]+)</title>\\s*(?:<ns>\\d+</ns>\\s*)?<id>(\\d+)</id>");
+
+  public static String sampleXml() {
+    return new InputStreamUtils().readEntireStream(new InputStreamUtils().classpathStream(SAMPLE_DUMP));
+  }
+
+  /**
+   * Writes a multistream bz2 dump and its bzipped index the same way wikimedia does:
+   * one stream for the header, one stream for every n pages and a final stream closing the mediawiki element.
+   */
+  public static void writeMultistream(String xml, int pagesPerStream, File dump, File index) throws IOException {
+    int firstPage = xml.indexOf("  <page>");
+    int footer = xml.lastIndexOf("</mediawiki>");
+    List<String> pages = Lists.newArrayList();
+    int start = firstPage;
+    while (start < footer) {
+      int end = xml.indexOf("</page>", start) + "</page>\n".length();
+      pages.add(xml.substring(start, end));
+      start = end;
+    }
+
+    StringBuilder idx = new StringBuilder();
+    try (OutputStream out = new FileOutputStream(dump)) {
+      long offset = 0;
+      offset += writeStream(out, xml.substring(0, firstPage));
+      for (int i = 0; i < pages.size(); i += pagesPerStream) {
+        StringBuilder sb = new StringBuilder();
+        for (String page : pages.subList(i, Math.min(i + pagesPerStream, pages.size()))) {
+          sb.append(page);
+          Matcher m = PAGE_ID.matcher(page);
+          if (m.find()) {
+            idx.append(offset).append(':').append(m.group(2)).append(':').append(m.group(1)).append('\n');
+          }
+        }
+        offset += writeStream(out, sb.toString());
+      }
+      writeStream(out, xml.substring(footer));
+    }
+    try (Writer w = new OutputStreamWriter(new BZip2CompressorOutputStream(new FileOutputStream(index)), StandardCharsets.UTF_8)) {
+      w.write(idx.toString());
+    }
+  }
+
+  private static int writeStream(OutputStream out, String content) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (BZip2CompressorOutputStream bz = new BZip2CompressorOutputStream(bytes)) {
+      bz.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    bytes.writeTo(out);
+    return bytes.size();
+  }
+
+  @Test
+  public void testIndex() throws Exception {
+    MultistreamIndex idx = MultistreamIndex.read(new ByteArrayInputStream(
+        "600:10:AccessibleComputing\n600:12:Anarchism\n1200:13:AfghanistanHistory\n1800:14:Foo:Bar\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(3, idx.size());
+    List<MultistreamIndex.Block> blocks = idx.blocks(2000);
+    assertEquals(4, blocks.size());
+    assertEquals(0, blocks.get(0).start);
+    assertEquals(600, blocks.get(0).end);
+    assertEquals(1800, blocks.get(3).start);
+    assertEquals(2000, blocks.get(3).end);
+
+    assertEquals(600, idx.offsetOf(5));
+    assertEquals(600, idx.offsetOf(12));
+    assertEquals(1200, idx.offsetOf(13));
+    assertEquals(1800, idx.offsetOf(99));
+    blocks = idx.blocksFrom(2000, 13);
+    assertEquals(3, blocks.size());
+    assertEquals(0, blocks.get(0).start);
+    assertEquals(1200, blocks.get(1).start);
+    assertEquals(1800, blocks.get(2).start);
+  }
+
+  @Test
+  public void testDumpOrder() throws Exception {
+    String xml = sampleXml();
+    File dir = FileUtils.createTempDir();
+    File dump = new File(dir, "multistream.xml.bz2");
+    File index = new File(dir, "multistream-index.txt.bz2");
+    writeMultistream(xml, 2, dump, index);
+    assertEquals(5, MultistreamIndex.read(index).size());
+
+    for (int threads : new int[]{1, 3, 8}) {
+      try (InputStream in = MultistreamInputStream.open(dump, index, threads)) {
+        assertEquals(xml, IOUtils.toString(in, StandardCharsets.UTF_8));
+      }
+    }
+
+    // all pages reach the filter in dump order
+    List<String> ids = Lists.newArrayList();
+    try (InputStream in = MultistreamInputStream.open(dump, index, 4)) {
+      new WikiXMLParser(in, (page, siteinfo) -> ids.add(page.getId())).parse();
+    }
+    assertEquals(Lists.newArrayList("1001", "1002", "1003", "1004", "1005", "1006", "1007", "1008", "1009", "1010"), ids);
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void testShards() throws Exception {
+    String xml = sampleXml();
+    File dir = FileUtils.createTempDir();
+    File dump = new File(dir, "multistream.xml.bz2");
+    File index = new File(dir, "multistream-index.txt.bz2");
+    writeMultistream(xml, 1, dump, index);
+
+    List<List<MultistreamIndex.Block>> shards = MultistreamIndex.read(index).shards(dump.length(), 3);
+    assertEquals(3, shards.size());
+    List<String> ids = Lists.newArrayList();
+    for (int idx = 0; idx < shards.size(); idx++) {
+      List<MultistreamIndex.Block> blocks = shards.get(idx);
+      assertEquals(0, blocks.get(0).start);
+      InputStream in = new MultistreamInputStream(dump, blocks, 2);
+      if (idx < shards.size() - 1) {
+        in = new SequenceInputStream(in, new ByteArrayInputStream("</mediawiki>".getBytes(StandardCharsets.UTF_8)));
+      }
+      try (InputStream stream = in) {
+        new WikiXMLParser(stream, (page, siteinfo) -> ids.add(page.getId())).parse();
+      }
+    }
+    // shards are disjoint and complete
+    assertEquals(Lists.newArrayList("1001", "1002", "1003", "1004", "1005", "1006", "1007", "1008", "1009", "1010"), ids);
+
+    // never more shards than streams
+    assertEquals(10, MultistreamIndex.read(index).shards(dump.length(), 32).size());
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+}
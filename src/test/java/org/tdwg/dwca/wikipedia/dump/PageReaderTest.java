@@ -0,0 +1,103 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import info.bliki.wiki.dump.WikiXMLParser;
+import org.gbif.utils.file.FileUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PageReaderTest {
+
+  private static class Collector implements IArticleFilter {
+    final List<WikiArticle> pages = Lists.newArrayList();
+
+    @Override
+    public void process(WikiArticle page, Siteinfo siteinfo) {
+      pages.add(page);
+    }
+  }
+
+  @Test
+  public void testSample() throws Exception {
+    Collector col = new Collector();
+    PageReader reader;
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      reader = new PageReader(in, col);
+      reader.parse();
+    }
+    assertEquals(10, reader.getPageCounter());
+    assertEquals(7, reader.getSkippedCounter());
+    assertEquals("Wikipedia", reader.getSiteinfo().getSitename());
+    assertEquals(Integer.valueOf(10), reader.getSiteinfo().getIntegerNamespace("Template"));
+
+    assertEquals(3, col.pages.size());
+    assertEquals("1001", col.pages.get(0).getId());
+    assertEquals("1004", col.pages.get(1).getId());
+    assertEquals("1010", col.pages.get(2).getId());
+    // bliki mistakes the contributor id for the revision id
+    assertEquals("5001", col.pages.get(0).getRevisionId());
+
+    // main pages are identical to the ones produced by bliki
+    final Map<String, WikiArticle> bliki = Maps.newHashMap();
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      new WikiXMLParser(in, new IArticleFilter() {
+        @Override
+        public void process(WikiArticle page, Siteinfo siteinfo) {
+          bliki.put(page.getId(), page);
+        }
+      }).parse();
+    }
+    for (WikiArticle p : col.pages) {
+      WikiArticle expected = bliki.get(p.getId());
+      assertTrue(p.isMain());
+      assertEquals(expected.getTitle(), p.getTitle());
+      assertEquals(expected.getTimeStamp(), p.getTimeStamp());
+      assertEquals(expected.getText(), p.getText());
+    }
+  }
+
+  @Test
+  public void testNamespaces() throws Exception {
+    Collector col = new Collector();
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      new PageReader(in, col, ImmutableSet.of(10)).parse();
+    }
+    assertEquals(5, col.pages.size());
+    for (WikiArticle p : col.pages) {
+      assertTrue(p.isTemplate());
+      assertTrue(p.getTitle().startsWith("Template:Taxonomy/"));
+    }
+  }
+
+  /**
+   * Old dumps have no ns element, the namespace is derived from the title prefix.
+   */
+  @Test
+  public void testTitlePrefix() throws Exception {
+    String xml = "<mediawiki><siteinfo><namespaces>"
+        + "<namespace key=\"0\" /><namespace key=\"10\">Vorlage</namespace>"
+        + "</namespaces></siteinfo>"
+        + "<page><title>Vorlage:Taxobox</title><id>1</id><revision><id>11</id><text>{{{1}}}</text></revision></page>"
+        + "<page><title>Weißtanne</title><id>2</id><revision><id>12</id><text>Die &lt;b&gt;Weißtanne</text></revision></page>"
+        + "</mediawiki>";
+    Collector col = new Collector();
+    new PageReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), col).parse();
+    assertEquals(1, col.pages.size());
+    assertEquals("2", col.pages.get(0).getId());
+    assertEquals("12", col.pages.get(0).getRevisionId());
+    assertEquals("Die <b>Weißtanne", col.pages.get(0).getText());
+  }
+}
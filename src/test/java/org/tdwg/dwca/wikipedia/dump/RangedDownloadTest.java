@@ -0,0 +1,164 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.gbif.utils.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests against a local range capable server that can be told to break off responses half way.
+ */
+public class RangedDownloadTest {
+  private static final String DUMP = "/enwiki-latest-pages-articles.xml.bz2";
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+  private final byte[] data = new byte[100000];
+  private final AtomicInteger breakResponses = new AtomicInteger();
+  private final AtomicLong served = new AtomicLong();
+  private String checksums;
+  private HttpServer server;
+  private File dir;
+
+  @Before
+  public void start() throws Exception {
+    new Random(17).nextBytes(data);
+    checksums = Hashing.sha1().hashBytes(data) + "  enwiki-20220401-pages-articles.xml.bz2\n"
+        + "0000000000000000000000000000000000000000  enwiki-20220401-pages-articles-multistream.xml.bz2\n";
+    dir = FileUtils.createTempDir();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(DUMP, this::serveDump);
+    server.createContext("/enwiki-latest-sha1sums.txt", exchange -> {
+      byte[] body = checksums.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+  }
+
+  private void serveDump(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+    exchange.getResponseHeaders().add("Last-Modified", "Fri, 15 Apr 2022 05:20:00 GMT");
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().add("Content-Length", String.valueOf(data.length));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+      return;
+    }
+    int start = 0;
+    int end = data.length - 1;
+    int status = 200;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (range != null) {
+      Matcher m = RANGE.matcher(range);
+      assertTrue(m.matches());
+      start = Integer.parseInt(m.group(1));
+      end = Integer.parseInt(m.group(2));
+      status = 206;
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+    }
+    int len = end - start + 1;
+    exchange.sendResponseHeaders(status, len);
+    try {
+      if (breakResponses.getAndDecrement() > 0) {
+        len = len / 2;
+      }
+      exchange.getResponseBody().write(data, start, len);
+      exchange.getResponseBody().flush();
+      served.addAndGet(len);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @After
+  public void stop() throws IOException {
+    server.stop(0);
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+
+  private URL url(String path) throws Exception {
+    return new URL("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  private RangedDownload download(File target) throws Exception {
+    return new RangedDownload(url(DUMP), target, 4)
+        .checksums(url("/enwiki-latest-sha1sums.txt"))
+        .retryDelay(1);
+  }
+
+  @Test
+  public void testRetries() throws Exception {
+    File target = new File(dir, "dump.xml.bz2");
+    // every chunk breaks off once at most
+    breakResponses.set(3);
+    assertTrue(download(target).download());
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    // only the missing bytes were requested again
+    assertEquals(data.length, served.get());
+    // no part files left
+    assertEquals(1, dir.list().length);
+
+    // up to date
+    assertFalse(download(target).download());
+    assertEquals(data.length, served.get());
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File target = new File(dir, "dump.xml.bz2");
+    // every attempt breaks off
+    breakResponses.set(Integer.MAX_VALUE);
+    try {
+      download(target).download();
+      fail("Download must fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(target.exists());
+    long first = served.get();
+    assertTrue(first > data.length / 2);
+
+    // a later run continues with the existing parts
+    breakResponses.set(0);
+    served.set(0);
+    assertTrue(download(target).download());
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    assertEquals(data.length - first, served.get());
+  }
+
+  @Test
+  public void testChecksumMismatch() throws Exception {
+    checksums = "0000000000000000000000000000000000000000  enwiki-20220401-pages-articles.xml.bz2\n";
+    File target = new File(dir, "dump.xml.bz2");
+    try {
+      download(target).download();
+      fail("Checksum mismatch must fail");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Checksum"));
+    }
+    assertFalse(target.exists());
+    assertEquals(0, dir.list().length);
+  }
+}
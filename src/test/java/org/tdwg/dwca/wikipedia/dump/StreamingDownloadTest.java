@@ -0,0 +1,113 @@
+package org.tdwg.dwca.wikipedia.dump;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.gbif.utils.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingDownloadTest {
+  private static final long LAST_MODIFIED = 1650000000000L;
+  private HttpServer server;
+  private byte[] dump;
+  private File dir;
+
+  @Before
+  public void start() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new BZip2CompressorOutputStream(bytes)) {
+      out.write(MultistreamInputStreamTest.sampleXml().getBytes(StandardCharsets.UTF_8));
+    }
+    dump = bytes.toByteArray();
+    dir = FileUtils.createTempDir();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/dump.xml.bz2", exchange -> {
+      String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+      if (since != null) {
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        exchange.getResponseHeaders().add("Last-Modified", "Fri, 15 Apr 2022 05:20:00 GMT");
+        exchange.sendResponseHeaders(200, dump.length);
+        exchange.getResponseBody().write(dump);
+      }
+      exchange.close();
+    });
+    // announces the full dump, but breaks off half way
+    server.createContext("/broken.xml.bz2", exchange -> {
+      exchange.sendResponseHeaders(200, dump.length);
+      try {
+        exchange.getResponseBody().write(dump, 0, dump.length / 2);
+        exchange.getResponseBody().flush();
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stop() throws IOException {
+    server.stop(0);
+    org.apache.commons.io.FileUtils.deleteDirectory(dir);
+  }
+
+  private URL url(String path) throws Exception {
+    return new URL("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    File target = new File(dir, "dump.xml.bz2");
+    final List<String> ids = Lists.newArrayList();
+    try (StreamingDownload download = StreamingDownload.open(url("/dump.xml.bz2"), target)) {
+      new PageReader(new BZip2CompressorInputStream(download.getStream(), true), (page, siteinfo) -> ids.add(page.getId())).parse();
+      // nothing is written before completion
+      assertFalse(target.exists());
+      download.complete();
+      assertEquals(LAST_MODIFIED, download.getLastModified().getTime());
+    }
+    assertEquals(Lists.newArrayList("1001", "1004", "1010"), ids);
+    assertArrayEquals(dump, Files.readAllBytes(target.toPath()));
+    assertEquals(LAST_MODIFIED, target.lastModified());
+
+    // the existing dump is up to date
+    assertNull(StreamingDownload.open(url("/dump.xml.bz2"), target));
+  }
+
+  @Test
+  public void testBrokenStream() throws Exception {
+    File target = new File(dir, "broken.xml.bz2");
+    try (StreamingDownload download = StreamingDownload.open(url("/broken.xml.bz2"), target)) {
+      IOUtils.toByteArray(download.getStream());
+      download.complete();
+      fail("Broken download must fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(target.exists());
+    assertFalse(new File(dir, "broken.xml.bz2.part").exists());
+    assertTrue(dir.list().length == 0);
+  }
+}
@@ -1,8 +1,31 @@
 package org.tdwg.dwca.wikipedia.taxonbox;
 
+import com.sun.net.httpserver.HttpServer;
+import org.gbif.utils.file.FileUtils;
 import org.junit.Test;
+import org.tdwg.dwca.wikipedia.PropertiesStore;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class AutomaticTaxonomyScraperTest {
+  private static final String ABIES = "<html><body><div id=\"mw-content-text\">"
+      + "<table class=\"wikitable\">"
+      + "<tr><td>Rank:</td><td><code>genus</code></td></tr>"
+      + "<tr><td>Extinct:</td><td><code>no</code></td></tr>"
+      + "</table>"
+      + "<table class=\"biota\">"
+      + "<tr><td>Kingdom:</td><td><span><span>Plantae</span></span></td></tr>"
+      + "<tr><td>Clade:</td><td><span><span>Tracheophytes</span></span></td></tr>"
+      + "<tr><td>Order:</td><td><span><span>Pinales</span></span></td></tr>"
+      + "<tr><td>Family:</td><td><span><span>Pinaceae</span></span></td></tr>"
+      + "</table></div></body></html>";
 
   @Test
   public void testUpdateTaxonInfo() throws Exception {
@@ -13,4 +36,66 @@ public class AutomaticTaxonomyScraperTest {
 
     System.out.println(taxon);
   }
+
+  private static TaxonInfo update(String name) {
+    TaxonInfo taxon = new TaxonInfo();
+    taxon.setScientificName(name);
+    AutomaticTaxonomyScraper.updateTaxonInfo(taxon);
+    return taxon;
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/wiki/", exchange -> {
+      requests.incrementAndGet();
+      if (exchange.getRequestURI().getPath().endsWith("/Abies")) {
+        byte[] body = ABIES.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+      } else {
+        exchange.sendResponseHeaders(404, -1);
+      }
+      exchange.close();
+    });
+    server.start();
+    File dir = FileUtils.createTempDir();
+    PropertiesStore store = new PropertiesStore(dir, 30);
+    try {
+      AutomaticTaxonomyScraper.useStore(store);
+      AutomaticTaxonomyScraper.useWiki("http://localhost:" + server.getAddress().getPort() + "/wiki/");
+      long hits = AutomaticTaxonomyScraper.getCacheStats().hitCount();
+
+      for (int idx = 0; idx < 3; idx++) {
+        TaxonInfo abies = update("Abies");
+        assertEquals("genus", abies.getRankVerbatim());
+        assertEquals("Plantae", abies.getKingdom());
+        assertEquals("Pinales", abies.getOrder());
+        assertEquals("Pinaceae", abies.getFamily());
+
+        TaxonInfo missing = update("Nonexisting genus");
+        assertNull(missing.getKingdom());
+        assertTrue(missing.getRemarks().contains("No taxonomy found at http://localhost:"));
+        assertTrue(missing.getRemarks().contains("/wiki/Template:Taxonomy/Nonexisting_genus"));
+      }
+      // missing pages are cached too
+      assertEquals(2, requests.get());
+      assertEquals(4, AutomaticTaxonomyScraper.getCacheStats().hitCount() - hits);
+      assertEquals(2, store.getMisses());
+
+      // a later run reads the stored pages
+      AutomaticTaxonomyScraper.useWiki("http://localhost:" + server.getAddress().getPort() + "/wiki/");
+      assertEquals("Pinaceae", update("Abies").getFamily());
+      assertTrue(update("Nonexisting_genus").getRemarks().contains("No taxonomy found"));
+      assertEquals(2, requests.get());
+      assertEquals(2, store.getHits());
+
+    } finally {
+      AutomaticTaxonomyScraper.useStore(null);
+      AutomaticTaxonomyScraper.useWiki(AutomaticTaxonomyScraper.WIKI);
+      server.stop(0);
+      org.apache.commons.io.FileUtils.deleteDirectory(dir);
+    }
+  }
 }
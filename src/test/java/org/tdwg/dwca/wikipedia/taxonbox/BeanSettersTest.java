@@ -0,0 +1,58 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.junit.Test;
+
+import java.beans.PropertyDescriptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BeanSettersTest {
+
+  @Test
+  public void testSet() throws Exception {
+    BeanSetters setters = BeanSetters.of(TaxonInfo.class);
+    TaxonInfo info = new TaxonInfo();
+    assertTrue(setters.set(info, "familia", "Pinaceae"));
+    assertEquals("Pinaceae", info.getFamily());
+    // defined in TaxonInfoDE
+    assertTrue(setters.set(info, "taxon_wissname", "Abies alba"));
+    assertFalse(setters.set(info, "unknown_property", "x"));
+    assertFalse(setters.set(info, "Familia", "x"));
+    assertEquals("Pinaceae", info.getFamily());
+
+    // null values for object setters are accepted
+    info.setRank(Rank.Genus);
+    assertTrue(setters.set(info, "rank", null));
+    assertNull(info.getRank());
+    try {
+      setters.set(info, "rank", "Genus");
+      fail("Rank setter requires a Rank");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Makes sure the same properties are writable as with commons-beanutils.
+   */
+  @Test
+  public void testSameAsPropertyUtils() throws Exception {
+    for (Class<?> cl : new Class[]{TaxonInfo.class, Sound.class}) {
+      BeanSetters setters = BeanSetters.of(cl);
+      Object bean = cl.newInstance();
+      int writable = 0;
+      for (PropertyDescriptor pd : PropertyUtils.getPropertyDescriptors(cl)) {
+        if (pd.getWriteMethod() != null && pd.getWriteMethod().getParameterTypes()[0] == String.class) {
+          assertTrue(pd.getName(), setters.set(bean, pd.getName(), "x"));
+          writable++;
+        }
+      }
+      assertTrue(writable > 0);
+    }
+  }
+}
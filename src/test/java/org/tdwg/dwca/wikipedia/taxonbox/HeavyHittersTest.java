@@ -0,0 +1,113 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeavyHittersTest {
+
+  @Test
+  public void testTop() {
+    HeavyHitters hh = new HeavyHitters(10, 10);
+    AtomicInteger samples = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      hh.add("frequent", () -> "sample " + samples.incrementAndGet());
+      if (i % 2 == 0) {
+        hh.add("common", () -> "a very long sample for common");
+      }
+      // a long tail of rare keys
+      hh.add("rare" + i, null);
+    }
+    assertEquals(10, hh.size());
+    assertEquals(250, hh.getTotal());
+    // samples are only created for new keys
+    assertEquals(1, samples.get());
+
+    List<HeavyHitters.Counter> top = hh.top();
+    assertEquals("frequent", top.get(0).getKey());
+    assertEquals(100, top.get(0).getCount());
+    assertEquals(0, top.get(0).getError());
+    assertEquals("sample 1", top.get(0).getSample());
+    assertEquals("common", top.get(1).getKey());
+    assertEquals(50, top.get(1).getCount());
+    assertEquals("a very ...", top.get(1).getSample());
+    // later rare keys inherit the count of the evicted ones
+    assertTrue(top.get(2).getKey().startsWith("rare"));
+    assertTrue(top.get(2).getError() > 0);
+    assertTrue(top.get(2).getCount() < 50);
+    assertNull(top.get(2).getSample());
+    assertTrue(hh.contains("rare99"));
+    assertFalse(hh.contains("rare0"));
+  }
+
+  @Test
+  public void testEvictMinimum() {
+    HeavyHitters hh = new HeavyHitters(3, 10);
+    hh.add("a", null);
+    hh.add("b", null);
+    hh.add("c", null);
+    // known keys are counted without reordering the heap
+    hh.add("a", 5, null);
+    hh.add("b", 5, null);
+    hh.add("d", null);
+    assertTrue(hh.contains("a"));
+    assertTrue(hh.contains("b"));
+    assertFalse(hh.contains("c"));
+    assertEquals(1, hh.top().get(2).getError());
+    assertEquals(2, hh.top().get(2).getCount());
+    // d inherited the smallest count and is evicted next
+    hh.add("e", null);
+    assertFalse(hh.contains("d"));
+    assertTrue(hh.contains("a"));
+    assertTrue(hh.contains("b"));
+    assertEquals(3, hh.top().get(2).getCount());
+  }
+
+  @Test
+  public void testClear() {
+    HeavyHitters hh = new HeavyHitters(10, 10);
+    hh.add("key", 3, null);
+    hh.clear();
+    assertEquals(0, hh.size());
+    assertEquals(0, hh.getTotal());
+    hh.add("key", null);
+    assertEquals(1, hh.top().get(0).getCount());
+  }
+
+  @Test
+  public void testConcurrentCounting() throws Exception {
+    final HeavyHitters hh = new HeavyHitters(100, 10);
+    ExecutorService exec = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> results = Lists.newArrayList();
+      for (int t = 0; t < 8; t++) {
+        results.add(exec.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            hh.add("key" + (i % 10), null);
+          }
+        }));
+      }
+      for (Future<?> f : results) {
+        f.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+    assertEquals(10, hh.size());
+    assertEquals(80000, hh.getTotal());
+    for (HeavyHitters.Counter c : hh.top()) {
+      assertEquals(8000, c.getCount());
+      assertEquals(0, c.getError());
+    }
+  }
+}
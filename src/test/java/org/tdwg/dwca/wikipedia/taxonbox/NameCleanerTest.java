@@ -0,0 +1,92 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.base.Strings;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NameCleanerTest {
+  // the regular expressions formerly used to clean names
+  private static final Pattern REPL_REF_TAG = Pattern.compile("< *ref[a-zA-Z0-9 =\"\'_-]*>[^<>]+</ *ref *>", Pattern.CASE_INSENSITIVE);
+  private static final Pattern IS_EXTINCT = Pattern.compile("[†‡]");
+  private static final Pattern CLEAN_NAMES = Pattern.compile("[†‡\"'„“+|<>\\[\\]]", Pattern.CASE_INSENSITIVE);
+  private static final Pattern REMOVE_QUESTION_MARK = Pattern.compile("\\?");
+  private static final Pattern REPL_BRACKET_REMARKS = Pattern.compile("\\( *(or [^()]+|\\?|plant|animal) *\\)");
+  private static final String[] FRAGMENTS = new String[]{"<ref>", "</ref>", "< ref name=\"a\">", "</ REF >", "<ref/>",
+      "(", ")", "( or ", "or ", "(?)", "plant", "animal", "?", "†", "‡", "\"", "'", "„", "“", "+", "|", "<", ">", "[", "]",
+      " ", "  ", "\t", "\n", "\u00A0", "\u0001", "Abies", "alba", "x", "Mill."};
+
+  private final NameCleaner cleaner = new NameCleaner();
+
+  @Test
+  public void testClean() {
+    assertEquals("Puma concolor", cleaner.clean(" ''Puma  concolor'' "));
+    assertEquals("Abies alba", cleaner.clean("†Abies alba (?)"));
+    assertEquals("Abies alba", cleaner.clean("Abies alba ( or Abies pectinata)"));
+    assertEquals("Abies alba (Mill.)", cleaner.clean("[[Abies]] alba (Mill.) (plant)"));
+    assertEquals("Abies alba", cleaner.clean("Abies alba?"));
+    assertNull(cleaner.clean(" ? "));
+    assertNull(cleaner.clean(""));
+  }
+
+  @Test
+  public void testStripRefs() {
+    assertEquals("Cougar ", cleaner.stripRefs("Cougar<ref name=MSW3>Wilson</ref>"));
+    assertFalse(cleaner.isExtinct());
+    assertEquals("Cougar<ref name=MSW3/>", cleaner.stripRefs("Cougar<ref name=MSW3/>"));
+    assertEquals("†Dodo ", cleaner.stripRefs("†Dodo<REF>† Mauritius</ ref >"));
+    assertTrue(cleaner.isExtinct());
+    assertEquals("Dodo ", cleaner.stripRefs("Dodo<ref>† Mauritius</ref>"));
+    assertFalse(cleaner.isExtinct());
+  }
+
+  @Test
+  public void testExpandName() {
+    assertEquals("Vipera ammodytes transcaucasiana - Bruno, 1985",
+        NameCleaner.expandName("V. a. transcaucasiana - Bruno, 1985", "Vipera", "ammodytes"));
+    assertEquals("Vipera ammodytes", NameCleaner.expandName(" V.ammodytes", "Vipera", "ammodytes"));
+    assertEquals("Vipera berus", NameCleaner.expandName("V. berus", "Vipera", "ammodytes"));
+    assertEquals("Vipera a. x", NameCleaner.expandName("V. a. x", "Vipera", null));
+    assertNull(NameCleaner.expandName("Vipera ammodytes", "Vipera", "ammodytes"));
+    assertNull(NameCleaner.expandName("Coluber", "Vipera", "ammodytes"));
+    assertNull(NameCleaner.expandName("V", "Vipera", "ammodytes"));
+  }
+
+  /**
+   * Compares the cleaner with the former regular expressions for all taxobox values of the test resources
+   * and random combinations of the characters they treat specially.
+   */
+  @Test
+  public void testSameAsRegex() throws Exception {
+    for (String val : PlainWikiTextTest.taxoboxValues()) {
+      assertSame(val);
+    }
+    Random rnd = new Random(13);
+    for (int i = 0; i < 100000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int len = rnd.nextInt(12);
+      for (int j = 0; j < len; j++) {
+        sb.append(FRAGMENTS[rnd.nextInt(FRAGMENTS.length)]);
+      }
+      assertSame(sb.toString());
+    }
+  }
+
+  private void assertSame(String val) {
+    String stripped = REPL_REF_TAG.matcher(val).replaceAll(" ");
+    assertEquals(val, stripped, cleaner.stripRefs(val));
+    assertEquals(val, IS_EXTINCT.matcher(stripped).find(), cleaner.isExtinct());
+
+    String cleaned = CLEAN_NAMES.matcher(val).replaceAll(" ");
+    cleaned = REPL_BRACKET_REMARKS.matcher(cleaned).replaceAll(" ");
+    cleaned = REMOVE_QUESTION_MARK.matcher(cleaned).replaceAll(" ");
+    assertEquals(val, Strings.emptyToNull(StringUtils.normalizeSpace(cleaned)), cleaner.clean(val));
+  }
+}
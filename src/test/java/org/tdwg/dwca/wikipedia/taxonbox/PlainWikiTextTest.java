@@ -0,0 +1,132 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.filter.PlainTextConverter;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.WikipediaConfig;
+import org.tdwg.dwca.wikipedia.dump.PageReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlainWikiTextTest {
+  private static final String[] WIKITEXTS = new String[]{"agathis.txt", "apatosaurus.txt", "arthrobacter.txt",
+      "binomial2.txt", "collapsible1.txt", "collapsible2.txt", "cyprinus.txt", "fabaceae.txt", "olivenbaum.txt",
+      "pansy.txt", "plainlist1.txt", "plainlist2.txt", "puma-en.txt", "pumaconcolor-en.txt", "red_wolf.txt",
+      "rhus.txt", "scaevola_taccada.txt"};
+  private static final String[] PAGES = new String[]{"puma-en.xml", "taxon-pl.xml", "wiki-de.xml"};
+  private static final String[] BOXES = new String[]{"taxobox", "automatic taxobox", "speciesbox", "subspeciesbox",
+      "infraspeciesbox", "ficha de taxon", "ficha de taxón"};
+  private final PlainTextConverter converter = new PlainTextConverter();
+
+  @Test
+  public void testPlainText() {
+    assertEquals("Animalia", PlainWikiText.toPlainText("[[Animalia]]"));
+    assertEquals("Puma", PlainWikiText.toPlainText("''[[Puma (genus)|Puma]]''"));
+    assertEquals("Mammalia", PlainWikiText.toPlainText("[[Mammal]]ia"));
+    assertEquals("(Linnaeus, 1758)", PlainWikiText.toPlainText("([[Carl Linnaeus|Linnaeus]], 1758)"));
+    assertEquals("Puma concolor", PlainWikiText.toPlainText("'''''Puma concolor'''''"));
+    assertEquals("L'Hér.", PlainWikiText.toPlainText("L'Hér."));
+
+    assertNull(PlainWikiText.toPlainText("{{fossil range|Pleistocene}}"));
+    assertNull(PlainWikiText.toPlainText("Cougar<ref name=MSW3/>"));
+    assertNull(PlainWikiText.toPlainText("[[File:Puma.jpg]]"));
+    assertNull(PlainWikiText.toPlainText("[http://example.org Example]"));
+    assertNull(PlainWikiText.toPlainText("see http://example.org"));
+    assertNull(PlainWikiText.toPlainText("* a list"));
+    assertNull(PlainWikiText.toPlainText("A &amp; B"));
+    assertNull(PlainWikiText.toPlainText("[[Pipe trick|]]"));
+  }
+
+  /**
+   * Compares the fast path with bliki for every taxobox value found in the test resources.
+   */
+  @Test
+  public void testSameAsBliki() throws Exception {
+    Set<String> values = taxoboxValues();
+    assertTrue(values.size() > 100);
+    TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    int plain = 0;
+    for (String val : values) {
+      String fast = PlainWikiText.toPlainText(val);
+      if (fast != null) {
+        plain++;
+        assertEquals(val, StringUtils.normalizeSpace(wiki.render(converter, val)), StringUtils.normalizeSpace(fast));
+      }
+    }
+    assertTrue(plain + " of " + values.size() + " distinct taxobox values converted without bliki", plain > values.size() / 3);
+  }
+
+  static Set<String> taxoboxValues() throws Exception {
+    final Set<String> values = Sets.newLinkedHashSet();
+    final TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    for (String box : BOXES) {
+      wiki.registerTemplate(box, (w, params, writer) -> {
+        for (String v : params.values()) {
+          values.add(v.trim());
+        }
+      });
+    }
+    PlainTextConverter converter = new PlainTextConverter();
+    for (String res : WIKITEXTS) {
+      wiki.render(converter, Resources.toString(Resources.getResource(res), StandardCharsets.UTF_8));
+    }
+    IArticleFilter filter = (page, siteinfo) -> wiki.render(converter, page.getText());
+    try (InputStream in = Resources.getResource("enwiki-sample.xml").openStream()) {
+      new PageReader(in, filter).parse();
+    }
+    // page snippets without the mediawiki root element
+    for (String res : PAGES) {
+      String xml = "<mediawiki>" + Resources.toString(Resources.getResource(res), StandardCharsets.UTF_8) + "</mediawiki>";
+      new PageReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), filter).parse();
+    }
+    values.remove("");
+    return values;
+  }
+
+  /**
+   * Compares the fast path with bliki rendering for all plain taxobox values of the test resources.
+   * The repo has no JMH setup, so this is a simple warmed up timing.
+   */
+  @Test
+  @Ignore("manual benchmark")
+  public void benchmark() throws Exception {
+    Set<String> plain = Sets.newLinkedHashSet();
+    for (String val : taxoboxValues()) {
+      if (PlainWikiText.toPlainText(val) != null) {
+        plain.add(val);
+      }
+    }
+    TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    final int rounds = 200;
+    for (int warmup = 0; warmup < 3; warmup++) {
+      long start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        for (String val : plain) {
+          wiki.render(converter, val);
+        }
+      }
+      long bliki = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        for (String val : plain) {
+          PlainWikiText.toPlainText(val);
+        }
+      }
+      long fast = System.nanoTime() - start;
+      System.out.println(String.format("%d values: bliki %dms, fast path %dms", plain.size() * rounds,
+          TimeUnit.NANOSECONDS.toMillis(bliki), TimeUnit.NANOSECONDS.toMillis(fast)));
+    }
+  }
+}
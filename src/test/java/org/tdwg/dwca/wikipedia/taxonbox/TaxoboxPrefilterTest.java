@@ -0,0 +1,101 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import info.bliki.wiki.dump.WikiXMLParser;
+import info.bliki.wiki.filter.PlainTextConverter;
+import org.gbif.utils.file.FileUtils;
+import org.gbif.utils.file.InputStreamUtils;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.WikipediaConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaxoboxPrefilterTest {
+  private static WikipediaConfig cfg = new WikipediaConfig();
+  private TaxonboxWikiModel wiki = new TaxonboxWikiModel(cfg);
+  private PlainTextConverter converter = new PlainTextConverter();
+
+  @Test
+  public void testMatches() throws Exception {
+    assertTrue(TaxoboxPrefilter.matches("{{Taxobox\n| name = Puma"));
+    assertTrue(TaxoboxPrefilter.matches("Intro {{cite web|x}} {{ taxobox }}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Automatic_taxobox|taxon=Apatosaurus}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Automatic Taxo-box\n|taxon=Apatosaurus}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Template:Speciesbox|genus=Abies}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Subspeciesbox|genus=Puma}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{INFRASPECIESBOX}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Ficha de taxón\n| name = Olea}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Ficha_de_taxon|name = Olea}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Taxobox <!-- a comment -->\n| name = Puma}}"));
+    assertTrue(TaxoboxPrefilter.matches("{{Infobox person|child={{Taxobox}}}}"));
+
+    assertFalse(TaxoboxPrefilter.matches(null));
+    assertFalse(TaxoboxPrefilter.matches(""));
+    assertFalse(TaxoboxPrefilter.matches("{{"));
+    assertFalse(TaxoboxPrefilter.matches("Taxobox"));
+    assertFalse(TaxoboxPrefilter.matches("[[Taxobox]]"));
+    assertFalse(TaxoboxPrefilter.matches("{{Taxobox/core|name=Puma}}"));
+    assertFalse(TaxoboxPrefilter.matches("{{Taxonbar|from=Q35255}}"));
+    assertFalse(TaxoboxPrefilter.matches("{{Infobox settlement|name=Berlin}}"));
+    assertFalse(TaxoboxPrefilter.matches("{{Speciesbox2|genus=Abies}}"));
+    assertFalse(TaxoboxPrefilter.matches("{{Cite <!-- unclosed comment"));
+  }
+
+  /**
+   * Every page of the test corpus that is recognized as a species page by the wiki model must pass the prefilter.
+   */
+  @Test
+  public void testNoFalseNegatives() throws Exception {
+    InputStreamUtils isu = new InputStreamUtils();
+    File resources = new File(getClass().getResource("/").toURI());
+    int species = 0;
+    for (File f : resources.listFiles()) {
+      if (f.getName().endsWith(".txt")) {
+        String text = isu.readEntireStream(FileUtils.classpathStream(f.getName()));
+        if (isSpeciesPage(text)) {
+          species++;
+          assertTrue(f.getName(), TaxoboxPrefilter.matches(text));
+        }
+      }
+    }
+
+    final int[] pages = {0, 0};
+    try (InputStream in = FileUtils.classpathStream("enwiki-sample.xml")) {
+      new WikiXMLParser(in, new IArticleFilter() {
+        @Override
+        public void process(WikiArticle page, Siteinfo siteinfo) throws IOException {
+          String text = page.getText();
+          boolean match = TaxoboxPrefilter.matches(text);
+          if (isSpeciesPage(text)) {
+            pages[0]++;
+            assertTrue(page.getTitle(), match);
+          } else if (!match) {
+            pages[1]++;
+          }
+        }
+      }).parse();
+    }
+    // all taxobox pages of the corpus were tested
+    assertTrue(species >= 10);
+    assertTrue(pages[0] >= 2);
+    // the prefilter did skip some pages
+    assertTrue(pages[1] > 0);
+  }
+
+  private boolean isSpeciesPage(String text) throws IOException {
+    wiki.reset();
+    if (text == null) {
+      return false;
+    }
+    wiki.render(converter, text);
+    return wiki.getTaxonInfo() != null;
+  }
+}
@@ -1,5 +1,6 @@
 package org.tdwg.dwca.wikipedia.taxonbox;
 
+import com.google.common.collect.Lists;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -29,4 +30,17 @@ public class TaxonInfoTest {
     assertEquals("Abies alba var. alpina", tax.getScientificName());
   }
 
+  @Test
+  public void testSynonymExpansion(){
+    TaxonInfo tax = new TaxonInfo();
+    tax.setGenus("Abies");
+    tax.setScientificName("A. alba");
+    tax.getSynonyms().add("A. pectinata");
+    tax.getSynonyms().add("Pinus picea");
+    tax.postprocess(null, null);
+    assertEquals("Abies alba", tax.getScientificName());
+    // synonyms are expanded themselves, not replaced by the scientific name
+    assertEquals(Lists.newArrayList("Abies pectinata", "Pinus picea"), tax.getSynonyms());
+  }
+
 }
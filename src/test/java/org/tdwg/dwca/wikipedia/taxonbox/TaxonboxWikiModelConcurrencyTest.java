@@ -0,0 +1,87 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import info.bliki.wiki.filter.PlainTextConverter;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.WikipediaConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders taxobox pages, some with gallery tags, on many threads each owning a model like the render workers do
+ * and compares the results with the sequential rendering of each page.
+ */
+public class TaxonboxWikiModelConcurrencyTest {
+  // pages without automatic taxoboxes which would scrape the taxonomy templates
+  private static final String[] PAGES = new String[]{"agathis.txt", "arthrobacter.txt", "cyprinus.txt", "fabaceae.txt",
+      "olivenbaum.txt", "pansy.txt", "puma-en.txt", "red_wolf.txt", "rhus.txt", "scaevola_taccada.txt"};
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 5;
+
+  private static String render(TaxonboxWikiModel wiki, String text) throws Exception {
+    wiki.render(new PlainTextConverter(), text);
+    TaxonInfo info = wiki.getTaxonInfo();
+    if (info == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(info.getScientificName()).append('|')
+        .append(info.getRank()).append('|')
+        .append(info.getKingdom()).append('|')
+        .append(info.getFamily()).append('|')
+        .append(info.getGenus()).append('|')
+        .append(info.getSynonyms());
+    for (Image img : info.getImages()) {
+      sb.append('|').append(img.getUrl()).append(':').append(img.getTitle());
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testConcurrentRendering() throws Exception {
+    final Map<String, String> texts = Maps.newLinkedHashMap();
+    final Map<String, String> expected = Maps.newHashMap();
+    for (String page : PAGES) {
+      String text = Resources.toString(Resources.getResource(page), StandardCharsets.UTF_8);
+      texts.put(page, text);
+      expected.put(page, render(new TaxonboxWikiModel(new WikipediaConfig()), text));
+    }
+    assertTrue(expected.get("scaevola_taccada.txt").contains("Starr 010309-0534 Scaevola taccada.jpg:Scaevola taccada fruits; Maui, Kihei"));
+
+    ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> results = Lists.newArrayList();
+      for (int t = 0; t < THREADS; t++) {
+        final int offset = t;
+        results.add(exec.submit(() -> {
+          int checked = 0;
+          TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+          for (int r = 0; r < ROUNDS; r++) {
+            for (int p = 0; p < PAGES.length; p++) {
+              String page = PAGES[(p + offset) % PAGES.length];
+              wiki.reset();
+              assertEquals(page, expected.get(page), render(wiki, texts.get(page)));
+              checked++;
+            }
+          }
+          return checked;
+        }));
+      }
+      for (Future<Integer> f : results) {
+        assertEquals(ROUNDS * PAGES.length, (int) f.get());
+      }
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+}
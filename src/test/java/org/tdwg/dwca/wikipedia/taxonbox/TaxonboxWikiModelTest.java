@@ -9,9 +9,9 @@ import org.junit.Test;
 import org.tdwg.dwca.wikipedia.WikipediaConfig;
 
 import java.io.IOException;
-import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class TaxonboxWikiModelTest {
@@ -31,20 +31,62 @@ public class TaxonboxWikiModelTest {
   @Test
   public void testCounterOrdering() throws Exception {
     TaxonboxWikiModel wm = new TaxonboxWikiModel(cfg);
-    wm.unknownTemplatesCounter.put("converter", 29);
-    wm.unknownTemplatesCounter.put("converter-min", 1);
-    wm.unknownTemplatesCounter.put("converter-max", 45);
-    wm.unknownTemplatesCounter.put("converter2", 12);
-    wm.unknownTemplatesCounter.put("converter3", 1);
-
-    assertEquals(5, wm.getUnknownTemplatesCounter().size());
-    int last = 100;
-    for (Map.Entry<String, Integer> entry : wm.getUnknownTemplatesCounter().entrySet()) {
-      assertTrue(entry.getValue() <= last);
-      last = entry.getValue();
+    wm.getUnknownTemplates().add("converter", 29, null);
+    wm.getUnknownTemplates().add("converter-min", 1, null);
+    wm.getUnknownTemplates().add("converter-max", 45, null);
+    wm.getUnknownTemplates().add("converter2", 12, null);
+    wm.getUnknownTemplates().add("converter3", 1, null);
+
+    assertEquals(5, wm.getUnknownTemplates().top().size());
+    long last = 100;
+    for (HeavyHitters.Counter entry : wm.getUnknownTemplates().top()) {
+      assertTrue(entry.getCount() <= last);
+      last = entry.getCount();
     }
   }
 
+  @Test
+  public void testUnknownTemplates() throws Exception {
+    TaxonboxWikiModel wm = new TaxonboxWikiModel(cfg);
+    // only templates following the taxobox are on known species pages
+    String box = "{{Taxobox | name = Abies | genus = Abies | foo_bar = x }} {{Unknown template|a=1}} {{unknown_template}}";
+    for (int page = 0; page < 2; page++) {
+      wm.reset();
+      wm.render(converter, box);
+    }
+    assertEquals(2, wm.getUnknownProperties().top().get(0).getCount());
+    assertEquals("foo_bar", wm.getUnknownProperties().top().get(0).getKey());
+    HeavyHitters.Counter tmpl = wm.getUnknownTemplates().top().get(0);
+    assertEquals("unknowntemplate", tmpl.getKey());
+    assertEquals(4, tmpl.getCount());
+    assertTrue(tmpl.getSample().contains("a=1"));
+  }
+
+  /**
+   * Gallery titles are rendered by a helper model, which must share the budget of the page and not keep it exceeded.
+   */
+  @Test
+  public void testTemplateDepthOfHelper() throws Exception {
+    WikipediaConfig depthCfg = new WikipediaConfig();
+    depthCfg.maxTemplateDepth = 5;
+    TaxonboxWikiModel wm = new TaxonboxWikiModel(depthCfg);
+    StringBuilder nested = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      nested.append("{{Fossil range|");
+    }
+    for (int i = 0; i < 20; i++) {
+      nested.append("}}");
+    }
+    wm.reset();
+    wm.getGalleryModel().render(converter, nested.toString());
+    assertEquals("template depth over 5", wm.getBudgetExceeded());
+
+    // the next page expands templates again
+    wm.reset();
+    assertNull(wm.getBudgetExceeded());
+    assertEquals("68-65 Ma", wm.getGalleryModel().render(converter, "{{Fossil range|68|65|}}"));
+  }
+
   @Test
   public void testRender() throws Exception {
     WikiModel wiki = new TaxonboxWikiModel(cfg);
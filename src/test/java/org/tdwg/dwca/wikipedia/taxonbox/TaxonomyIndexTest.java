@@ -0,0 +1,148 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.gbif.utils.file.FileUtils;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.dump.MultistreamIndex;
+import org.tdwg.dwca.wikipedia.dump.MultistreamInputStream;
+import org.tdwg.dwca.wikipedia.dump.MultistreamInputStreamTest;
+import org.tdwg.dwca.wikipedia.dump.PageReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaxonomyIndexTest {
+
+  private static TaxonomyIndex sample() throws Exception {
+    TaxonomyIndex idx = new TaxonomyIndex();
+    try (InputStream in = FileUtils.classpathStream(MultistreamInputStreamTest.SAMPLE_DUMP)) {
+      new PageReader(in, idx, ImmutableSet.of(TaxonomyIndex.NAMESPACE)).parse();
+    }
+    return idx;
+  }
+
+  private static void assertAbies(AutomaticTaxonomyScraper.Taxonomy tax) {
+    assertEquals("genus", tax.rank);
+    assertEquals(5, tax.higherTaxa.size());
+    String[] expected = new String[]{"regnum", "Plantae", "classis", "Pinopsida", "ordo", "Pinales", "familia", "Pinaceae", "genus", "Abies"};
+    for (int i = 0; i < tax.higherTaxa.size(); i++) {
+      assertEquals(expected[2 * i], tax.higherTaxa.get(i)[0]);
+      assertEquals(expected[2 * i + 1], tax.higherTaxa.get(i)[1]);
+    }
+  }
+
+  @Test
+  public void testSampleDump() throws Exception {
+    TaxonomyIndex idx = sample();
+    assertEquals(5, idx.size());
+    assertAbies(idx.lookup("Abies"));
+    assertNull(idx.lookup("Picea"));
+    assertEquals(1, idx.getHits());
+    assertEquals(1, idx.getMisses());
+  }
+
+  @Test
+  public void testMultistream() throws Exception {
+    File dump = File.createTempFile("wikipedia-", "-multistream.xml.bz2");
+    File index = File.createTempFile("wikipedia-", "-multistream-index.txt.bz2");
+    try {
+      MultistreamInputStreamTest.writeMultistream(MultistreamInputStreamTest.sampleXml(), 1, dump, index);
+      List<MultistreamIndex.Block> blocks;
+      try (InputStream in = new BZip2CompressorInputStream(new FileInputStream(index), true)) {
+        blocks = MultistreamIndex.blocksWithTitles(in, dump.length(), TaxonomyIndex::isTaxonomyTemplate);
+      }
+      // the header and one stream per taxonomy template, but no footer
+      assertEquals(6, blocks.size());
+      assertTrue(blocks.get(5).end < dump.length());
+
+      TaxonomyIndex idx = new TaxonomyIndex();
+      try (InputStream in = new SequenceInputStream(new MultistreamInputStream(dump, blocks, 2),
+          new ByteArrayInputStream("</mediawiki>\n".getBytes(StandardCharsets.UTF_8)))) {
+        new PageReader(in, idx, ImmutableSet.of(TaxonomyIndex.NAMESPACE)).parse();
+      }
+      assertEquals(5, idx.size());
+      assertAbies(idx.lookup("Abies"));
+
+    } finally {
+      dump.delete();
+      index.delete();
+    }
+  }
+
+  @Test
+  public void testParameters() throws Exception {
+    TaxonomyIndex idx = new TaxonomyIndex();
+    idx.add("Panthera", "{{Don't edit this line {{{machine code|}}}\n"
+        + "|rank=genus\n|link=Panthera (genus)|''Panthera''\n|parent=Felidae/Pantherinae\n"
+        + "|refs={{cite web |title=Panthera |url=http://example.org}} [[Felidae|cats]]\n}}");
+    idx.add("Felidae/Pantherinae", "{{Don't edit this line {{{machine code|}}}\n|same_as=Pantherinae\n}}");
+    idx.add("Pantherinae", "{{Don't edit this line {{{machine code|}}}\n|rank=subfamilia\n|parent=Felidae\n}}");
+    idx.add("Felidae", "{{Don't edit this line {{{machine code|}}}\n|rank=familia\n|link=Felidae\n|parent=Mammalia\n|extinct=\n}}");
+    idx.add("Smilodon", "{{Don't edit this line {{{machine code|}}}\n|rank=genus\n|parent=Felidae\n|extinct=yes\n}}");
+
+    AutomaticTaxonomyScraper.Taxonomy panthera = idx.lookup("Panthera");
+    assertEquals("genus", panthera.rank);
+    assertNull(panthera.extinct);
+    // the display name of the link and the variant name of the same_as template
+    assertEquals("Panthera", panthera.higherTaxa.get(2)[1]);
+    assertEquals("subfamilia", panthera.higherTaxa.get(1)[0]);
+    assertEquals("Felidae", panthera.higherTaxa.get(1)[1]);
+    assertEquals("Felidae", panthera.higherTaxa.get(0)[1]);
+    assertEquals("yes", idx.lookup("smilodon").extinct);
+  }
+
+  @Test
+  public void testCycle() throws Exception {
+    TaxonomyIndex idx = new TaxonomyIndex();
+    idx.add("A", "{{Don't edit this line {{{machine code|}}}\n|rank=genus\n|parent=B\n}}");
+    idx.add("B", "{{Don't edit this line {{{machine code|}}}\n|rank=familia\n|parent=A\n}}");
+    assertEquals("genus", idx.lookup("A").rank);
+  }
+
+  @Test
+  public void testUpdateTaxonInfo() throws Exception {
+    try {
+      AutomaticTaxonomyScraper.useIndex(sample());
+      assertTrue(AutomaticTaxonomyScraper.hasIndex());
+      TaxonInfo abies = new TaxonInfo();
+      abies.setScientificName("Abies");
+      AutomaticTaxonomyScraper.updateTaxonInfo(abies);
+      assertEquals("genus", abies.getRankVerbatim());
+      assertEquals("Plantae", abies.getKingdom());
+      assertEquals("Pinopsida", abies.getClazz());
+      assertEquals("Pinales", abies.getOrder());
+      assertEquals("Pinaceae", abies.getFamily());
+
+      // speciesboxes only have a template for their genus
+      TaxonInfo species = new TaxonInfo();
+      species.setRank(Rank.Species);
+      species.setScientificName("Abies nordmanniana");
+      species.setGenus("Abies");
+      AutomaticTaxonomyScraper.updateTaxonInfo(species);
+      assertEquals(Rank.Species, species.getRank());
+      assertNull(species.getRankVerbatim());
+      assertEquals("Abies nordmanniana", species.getScientificName());
+      assertEquals("Pinaceae", species.getFamily());
+      assertEquals("Abies", species.getGenus());
+
+      TaxonInfo missing = new TaxonInfo();
+      missing.setScientificName("Picea");
+      AutomaticTaxonomyScraper.updateTaxonInfo(missing);
+      assertNull(missing.getKingdom());
+      assertTrue(missing.getRemarks().contains("No taxonomy found for Picea"));
+
+    } finally {
+      AutomaticTaxonomyScraper.useIndex(null);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import info.bliki.wiki.filter.PlainTextConverter;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.tdwg.dwca.wikipedia.WikipediaConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TemplateRegistryTest {
+  private static final String[] WIKITEXTS = new String[]{"agathis.txt", "apatosaurus.txt", "arthrobacter.txt",
+      "binomial2.txt", "collapsible1.txt", "collapsible2.txt", "cyprinus.txt", "fabaceae.txt", "olivenbaum.txt",
+      "pansy.txt", "plainlist1.txt", "plainlist2.txt", "puma-en.txt", "pumaconcolor-en.txt", "red_wolf.txt",
+      "rhus.txt", "scaevola_taccada.txt"};
+  private static final Pattern TEMPLATE = Pattern.compile("\\{\\{([^|{}]+)");
+
+  @Test
+  public void testLookup() {
+    TemplateRegistry reg = new TemplateRegistry();
+    TemplateHandler cite = (wiki, params, writer) -> writer.append("cite");
+    TemplateHandler box = (wiki, params, writer) -> writer.append("box");
+    reg.register("Cite web", cite);
+    reg.register("fichadetaxón", box);
+
+    assertSame(cite, reg.get("citeweb"));
+    assertSame(cite, reg.get("Cite_web"));
+    assertSame(cite, reg.get("cite-WEB"));
+    assertSame(cite, reg.get(" Cite web "));
+    assertSame(box, reg.get("Ficha de taxón"));
+    assertNull(reg.get("cite"));
+    assertNull(reg.get("citewebs"));
+    assertNull(reg.get(""));
+
+    // replace existing handler
+    reg.register("cite_web", box);
+    assertSame(box, reg.get("citeweb"));
+    assertEquals(2, reg.size());
+
+    assertEquals("fichadetaxón", TemplateRegistry.normalize("Ficha de_tax-ón"));
+  }
+
+  @Test
+  public void testResize() {
+    TemplateRegistry reg = new TemplateRegistry();
+    for (int i = 0; i < 1000; i++) {
+      final String name = "Template " + i;
+      reg.register(name, (wiki, params, writer) -> writer.append(name));
+    }
+    assertEquals(1000, reg.size());
+    TemplateRegistry copy = reg.copy();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(reg.get("template_" + i), copy.get("template" + i));
+    }
+  }
+
+  @Test
+  public void testCustomTemplate() throws Exception {
+    TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    wiki.registerTemplate("Nihil", (w, params, writer) -> writer.append("nothing"));
+    assertEquals("A nothing B", wiki.render(new PlainTextConverter(), "A {{nihil}} B"));
+    assertEquals("A B", wiki.render(new PlainTextConverter(), "A {{nihilo}}B"));
+  }
+
+  @Test
+  public void testGalleryTemplates() throws Exception {
+    TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    wiki.registerTemplate("Nihil", (w, params, writer) -> writer.append("nothing"));
+    TaxonboxWikiModel gallery = wiki.getGalleryModel();
+    wiki.registerTemplate("Omnia", (w, params, writer) -> writer.append("all"));
+    // templates registered before and after the gallery model was created
+    assertEquals("A nothing all B", gallery.render(new PlainTextConverter(), "A {{nihil}} {{omnia}} B"));
+  }
+
+  /**
+   * Compares the template dispatch with the former regex normalisation of all template calls in the test wikitexts.
+   */
+  @Test
+  @Ignore("manual benchmark")
+  public void benchmark() throws Exception {
+    List<String> names = Lists.newArrayList();
+    for (String res : WIKITEXTS) {
+      Matcher m = TEMPLATE.matcher(Resources.toString(Resources.getResource(res), StandardCharsets.UTF_8));
+      while (m.find()) {
+        names.add(m.group(1).trim());
+      }
+    }
+    TaxonboxWikiModel wiki = new TaxonboxWikiModel(new WikipediaConfig());
+    TemplateRegistry reg = new TemplateRegistry();
+    for (String t : TaxonboxWikiModel.TAXOBOX_TEMPLATES) {
+      reg.register(t, (w, params, writer) -> {});
+    }
+    for (String t : TaxonboxWikiModel.SPECIESBOX_TEMPLATES) {
+      reg.register(t, (w, params, writer) -> {});
+    }
+    final int rounds = 10000;
+    for (int warmup = 0; warmup < 2; warmup++) {
+      int found = 0;
+      Stopwatch watch = Stopwatch.createStarted();
+      for (int r = 0; r < rounds; r++) {
+        for (String name : names) {
+          String templateName = name.toLowerCase().replaceAll("[ _-]", "");
+          if (TaxonboxWikiModel.TAXOBOX_TEMPLATES.contains(templateName) || TaxonboxWikiModel.SPECIESBOX_TEMPLATES.contains(templateName)) {
+            found++;
+          }
+        }
+      }
+      System.out.println("Regex normalisation of " + names.size() * rounds + " templates: " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms, found " + found);
+
+      found = 0;
+      watch = Stopwatch.createStarted();
+      for (int r = 0; r < rounds; r++) {
+        for (String name : names) {
+          if (reg.get(name) != null) {
+            found++;
+          }
+        }
+      }
+      System.out.println("Registry lookup of " + names.size() * rounds + " templates: " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms, found " + found);
+    }
+
+    Stopwatch watch = Stopwatch.createStarted();
+    PlainTextConverter converter = new PlainTextConverter();
+    for (int r = 0; r < 10; r++) {
+      for (String res : WIKITEXTS) {
+        wiki.reset();
+        wiki.render(converter, Resources.toString(Resources.getResource(res), StandardCharsets.UTF_8));
+      }
+    }
+    System.out.println("Rendered " + WIKITEXTS.length * 10 + " wikitexts in " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+  }
+}
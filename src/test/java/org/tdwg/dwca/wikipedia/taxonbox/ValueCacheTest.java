@@ -0,0 +1,41 @@
+package org.tdwg.dwca.wikipedia.taxonbox;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ValueCacheTest {
+
+  @Test
+  public void testLru() {
+    final AtomicInteger loads = new AtomicInteger();
+    Function<String, String> loader = raw -> {
+      loads.incrementAndGet();
+      return raw.equals("[[]]") ? null : raw.replaceAll("[\\[\\]]", "");
+    };
+    ValueCache cache = new ValueCache(2, 20);
+    assertEquals("Animalia", cache.get("[[Animalia]]", loader));
+    assertEquals("Animalia", cache.get("[[Animalia]]", loader));
+    assertNull(cache.get("[[]]", loader));
+    assertNull(cache.get("[[]]", loader));
+    assertEquals(2, loads.get());
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    // evicts the least recently used Animalia
+    assertEquals("Chordata", cache.get("[[Chordata]]", loader));
+    assertEquals(2, cache.size());
+    assertEquals("Animalia", cache.get("[[Animalia]]", loader));
+    assertEquals(4, loads.get());
+
+    // long values are not cached
+    cache.get("[[Very long value beyond the limit]]", loader);
+    cache.get("[[Very long value beyond the limit]]", loader);
+    assertEquals(6, loads.get());
+    assertEquals(2, cache.size());
+  }
+}